@@ -2,11 +2,19 @@ package consensus;
 
 import networking.TcpMeshManager;
 import networking.GameMessage;
+import networking.NetworkConfig;
 import networking.Peer;
+import networking.PeerRanking;
 
+import java.util.HashSet;
 import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import game.NodeContext;
+import game.Player;
 
 import static util.ConsolePrint.printError;
 import static util.ConsolePrint.printElection;
@@ -20,6 +28,9 @@ public class ElectionManager {
     private final NodeContext node;
     public volatile String currentLeaderId = null;
     private TcpMeshManager connectionManager;
+    private final PeerRanking ranking = new PeerRanking();
+    // Runs the rotation checks off the delivery thread
+    private final ScheduledExecutorService timer = Executors.newSingleThreadScheduledExecutor();
     
     private volatile boolean electionInProgress = false;
     public volatile boolean iAmLeader = false; 
@@ -31,21 +42,25 @@ public class ElectionManager {
 
     /**
      * Starts the stabilization period during which the node listens for existing leader signals.
-     * If no leader is detected within the period, initiates a new election.
+     * Rather than polling, it re-checks on every membership change and starts the election as soon as
+     * bootstrap.quorum peers are connected, unless a leader has announced itself by then.
      */
     public void startStabilizationPeriod() {
-        new Thread(() -> {
-            currentLeaderId = null;
-
-            while (connectionManager.getConnectedPeerIds().size() < 3) {
-                try {Thread.sleep(5000);} catch (InterruptedException e) { }
-                if (iAmLeader) return;
-                if (currentLeaderId != null) return;
+        AtomicBoolean settled = new AtomicBoolean(false);
+        Runnable[] check = new Runnable[1];
+        check[0] = () -> {
+            if (settled.get()) return;
+            if (iAmLeader || currentLeaderId != null) {
+                settled.set(true);
+            } else if (connectionManager.getConnectedPeerIds().size() >= NetworkConfig.BOOTSTRAP_QUORUM && settled.compareAndSet(false, true)) {
+                printElection("[Election] " + connectionManager.getConnectedPeerIds().size() + " peers connected. Starting Election.");
+                startElection("Startup");
             }
+            if (settled.get()) connectionManager.removeMembershipListener(check[0]);
+        };
 
-            printElection("[Election] Starting Election.");
-            startElection("Startup");
-        }).start();
+        connectionManager.addMembershipListener(check[0]);
+        check[0].run();
     }
 
     /**
@@ -57,6 +72,67 @@ public class ElectionManager {
         startElection("New Round");
     }
 
+    /**
+     * Rotates the dealer without an election once the outgoing dealer's HANDOVER is delivered.
+     * The HANDOVER follows the final table state in the sequenced stream, so every node computes the same
+     * next dealer from the same table. The next dealer normally already took over from the outgoing dealer's
+     * direct handover (see acceptHandover); if that never arrives it rebuilds the game from its own view of the table.
+     * If the next dealer never announces itself, an election takes over.
+     * @param outgoing The dealer that sequenced the HANDOVER.
+     * @param roundNumber The round about to start, carried by the HANDOVER.
+     */
+    public void onScheduledRotation(String outgoing, int roundNumber) {
+        Set<String> members = new HashSet<>();
+        for (Player p : node.clientGame.table.players) members.add(p.id);
+        members.add(outgoing);
+
+        String next = Peer.getScheduledLeader(members, outgoing, roundNumber);
+        printElection("[Election] Round " + roundNumber + " dealer is " + next + " by schedule.");
+
+        if (node.myId.equals(outgoing) && !next.equals(node.myId)) {
+            iAmLeader = false;
+            node.destroyServerGame();
+        }
+
+        if (next.equals(node.myId)) {
+            // The direct handover was sent right after this HANDOVER, so it is usually a moment behind.
+            // The check runs on the timer so the deliveries queued behind this one are not held up meanwhile.
+            timer.schedule(() -> {
+                synchronized (this) {
+                    if (iAmLeader) return;
+                    printError("[Election] No handover from " + outgoing + ". Rebuilding the game from my own table.");
+                    electionInProgress = true;
+                    declareVictory(false);
+                }
+            }, NetworkConfig.LEADER_HANDOVER_WAIT_MS, TimeUnit.MILLISECONDS);
+            return;
+        }
+
+        timer.schedule(() -> {
+            if (next.equals(currentLeaderId) || iAmLeader) return;
+            printError("[Election] Scheduled dealer " + next + " did not take over.");
+            startElection("Scheduled Dealer Silent");
+        }, NetworkConfig.LEADER_ROTATION_TIMEOUT_MS, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Takes over as dealer from the state the outgoing dealer sent directly.
+     * The new epoch starts right after the outgoing dealer's last sequence number, its recent messages are kept
+     * so followers can still repair the previous hand, and the game resumes from its authoritative table.
+     * @param state The outgoing dealer's handover.
+     */
+    public synchronized void acceptHandover(HandoverState state) {
+        if (iAmLeader) return;
+        printElectionBold("[Election] Handover received for round " + state.roundNumber + " at #" + state.lastSeq + ".");
+
+        long epoch = Math.max(state.epoch, node.queue.getEpoch()) + 1;
+        node.sequencer.startEpoch(epoch, state.lastSeq, state.window);
+        node.queue.beginEpoch(epoch, state.lastSeq + 1);
+        announceVictory();
+
+        node.createServerGame(state);
+    }
+
     /**
      * Initiates a new election process using the Bully algorithm.
      * @param reason The reason for starting the election e.g. "Leader Crash" or "Challenged by X".
@@ -67,19 +143,14 @@ public class ElectionManager {
         
         electionInProgress = true;
         boolean sentChallenge = false;
-        int currentRoundNumber = node.clientGame.table.roundNumber;
-        Set<String> connectedPeers = connectionManager.getConnectedPeerIds();
-        long myHash = Peer.getPeerHash(node.myId, node.myId, connectedPeers, currentRoundNumber);
+        PeerRanking.Table ranks = currentRanking();
 
-        printElection("[Election] Starting Election (" + reason + ", my hash: " + myHash + ").");
+        printElection("[Election] Starting Election (" + reason + ", my hash: " + ranks.getMyHash() + ").");
         
-        for (String peerId : connectedPeers) {
-            long peerHash = Peer.getPeerHash(peerId, node.myId, connectedPeers, currentRoundNumber);
-            if (peerHash > myHash) {
-                printElection("[Election] Challenging node " + peerId + " (hash: " + peerHash + ").");
-                connectionManager.sendToPeer(peerId, new GameMessage(GameMessage.Type.ELECTION));
-                sentChallenge = true;
-            }
+        for (String peerId : ranks.getHigherPeers()) {
+            printElection("[Election] Challenging node " + peerId + " (hash: " + ranks.hashOf(peerId) + ").");
+            connectionManager.sendToPeer(peerId, new GameMessage(GameMessage.Type.ELECTION));
+            sentChallenge = true;
         }
 
         if (!sentChallenge) {
@@ -100,18 +171,37 @@ public class ElectionManager {
 
     /**
      * Declares this node as the new leader and multicasts the COORDINATOR message.
+     * The new leader opens the next epoch where its own delivered stream ends, and announces it with the COORDINATOR,
+     * so followers carry on with their queues instead of resynchronizing.
      * @param handover Indicates if this declaration is part of a leadership handover.
      */
     public synchronized void declareVictory(boolean handover) {
         if (!electionInProgress && !handover) return;
         printElectionBold("[Election] I am the new Leader.");
         
+        long epoch = node.queue.getEpoch() + 1;
+        long firstSeq = node.queue.getNextExpected();
+        node.sequencer.startEpoch(epoch, firstSeq - 1);
+        node.queue.beginEpoch(epoch, firstSeq);
+
+        announceVictory();
+
+        if(!handover) node.createServerGame(node.clientGame.table);
+    }
+
+    private void announceVictory() {
         iAmLeader = true;
         currentLeaderId = node.myId;
         electionInProgress = false;
-        connectionManager.multicastToAll(new GameMessage(GameMessage.Type.COORDINATOR));
+        connectionManager.multicastToAll(new GameMessage(GameMessage.Type.COORDINATOR, node.sequencer.getEpochStart()));
+    }
 
-        if(!handover) node.createServerGame(node.clientGame.table);
+    /**
+     * @return The election hashes for the current membership and round, rebuilt only when either has changed.
+     */
+    private PeerRanking.Table currentRanking() {
+        return ranking.get(node.myId, connectionManager.getConnectedPeerIds(),
+            connectionManager.getMembershipVersion(), node.clientGame.table.roundNumber);
     }
 
     /**
@@ -121,12 +211,10 @@ public class ElectionManager {
     public void handleMessage(GameMessage msg) {
         switch (msg.type) {
             case ELECTION:
-                int currentRoundNumber = node.clientGame.table.roundNumber;
-                Set<String> connectedPeers = connectionManager.getConnectedPeerIds();
-                long myHash = Peer.getPeerHash(node.myId, node.myId, connectedPeers, currentRoundNumber);
-                long senderHash = Peer.getPeerHash(msg.getSenderId(), node.myId, connectedPeers, currentRoundNumber);
+                PeerRanking.Table ranks = currentRanking();
+                long senderHash = ranks.hashOf(msg.getSenderId());
 
-                if (senderHash < myHash) {
+                if (senderHash < ranks.getMyHash()) {
                     connectionManager.sendToPeer(msg.getSenderId(), new GameMessage(GameMessage.Type.ELECTION_OK));
                     startElection("Challenged by " + msg.getSenderId() + " with hash: " + senderHash);
                 }
@@ -149,17 +237,56 @@ public class ElectionManager {
 
     /**
      * Handles the failure of a node by checking if it was the leader and initiating a new election if necessary.
+     * The dealer's standby takes over immediately instead; the other nodes only hold an election if it does not.
      * @param deadNodeId The ID of the node that has failed.
      */
     public void handleNodeFailure(String deadNodeId) {
         printError("[Election] Detected failure of Node " + deadNodeId);
         
         if (deadNodeId.equals(currentLeaderId)) {
+            if (node.standby != null && node.standby.isStandby()) {
+                takeOverAsStandby(deadNodeId);
+                return;
+            }
+
+            // Give a live standby the chance to take over before falling back to an election
+            String standbyId = node.standby != null ? node.standby.getStandbyId() : null;
+            long wait = standbyId != null && connectionManager.getConnectedPeerIds().contains(standbyId)
+                ? NetworkConfig.LEADER_STANDBY_TIMEOUT_MS : 500;
+
             printError("[Election] The leader has crashed, starting election again.");
             new Thread(() -> {
-                try { Thread.sleep(500); } catch(Exception e){}
+                try { Thread.sleep(wait); } catch(Exception e){}
+                if (!deadNodeId.equals(currentLeaderId)) return;
                 startElection("Leader Crash");
             }).start();
         }
     }
+
+    /**
+     * Takes over at once as the crashed dealer's standby, without an election.
+     * The new epoch starts right after the last message this node delivered, the replicated messages stay available
+     * for repairs, and the hand resumes from the shadow table.
+     * @param deadLeaderId The dealer that crashed.
+     */
+    private void takeOverAsStandby(String deadLeaderId) {
+        // Let the shadow catch up with everything the queue has already released
+        long deadline = System.currentTimeMillis() + 200;
+        while (node.queue.getPendingDeliveries() > 0 && System.currentTimeMillis() < deadline) {
+            try { Thread.sleep(1); } catch (InterruptedException e) { break; }
+        }
+
+        synchronized (this) {
+            if (iAmLeader || !deadLeaderId.equals(currentLeaderId)) return;
+            printElectionBold("[Election] Dealer " + deadLeaderId + " crashed. Taking over as its standby.");
+
+            long epoch = node.queue.getEpoch() + 1;
+            long lastSeq = node.queue.getNextExpected() - 1;
+            node.sequencer.startEpoch(epoch, lastSeq, node.sequencer.replicatedWindow(lastSeq, NetworkConfig.LEADER_HANDOVER_WINDOW));
+            node.queue.beginEpoch(epoch, lastSeq + 1);
+            announceVictory();
+        }
+
+        node.createServerGame(node.standby);
+    }
 }
\ No newline at end of file
@@ -0,0 +1,74 @@
+package consensus;
+
+import networking.BinaryMessageCodec;
+import networking.GameMessage;
+import networking.MessageCodec;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.List;
+
+/**
+ * What the outgoing dealer hands its successor over TCP: the authoritative table, where the sequence stopped,
+ * and the recently sequenced messages so the successor can still repair the old epoch's gaps.
+ *
+ * Payload layout, one field per line:
+ * - round number
+ * - epoch:lastSeq
+ * - table state (Base64, as sent in GAME_STATE)
+ * - one line per retained message, Base64 of its binary encoding, in sequence order
+ */
+public class HandoverState {
+    private static final MessageCodec CODEC = new BinaryMessageCodec();
+
+    public final int roundNumber;
+    public final long epoch;
+    public final long lastSeq;
+    public final String table;
+    public final List<GameMessage> window;
+
+    public HandoverState(int roundNumber, long epoch, long lastSeq, String table, List<GameMessage> window) {
+        this.roundNumber = roundNumber;
+        this.epoch = epoch;
+        this.lastSeq = lastSeq;
+        this.table = table;
+        this.window = window;
+    }
+
+    public String encode() {
+        StringBuilder sb = new StringBuilder();
+        sb.append(roundNumber).append('\n');
+        sb.append(epoch).append(':').append(lastSeq).append('\n');
+        sb.append(table);
+        for (GameMessage msg : window) {
+            sb.append('\n').append(Base64.getEncoder().encodeToString(CODEC.encode(msg)));
+        }
+        return sb.toString();
+    }
+
+    /**
+     * @param payload A HANDOVER payload.
+     * @return The decoded state.
+     * @throws IOException If the payload is malformed.
+     */
+    public static HandoverState decode(String payload) throws IOException {
+        String[] lines = payload.split("\n");
+        if (lines.length < 3) throw new IOException("Truncated handover");
+
+        try {
+            int roundNumber = Integer.parseInt(lines[0]);
+            int colon = lines[1].indexOf(':');
+            long epoch = Long.parseLong(lines[1].substring(0, colon));
+            long lastSeq = Long.parseLong(lines[1].substring(colon + 1));
+
+            List<GameMessage> window = new ArrayList<>(lines.length - 3);
+            for (int i = 3; i < lines.length; i++) {
+                window.add(CODEC.decode(Base64.getDecoder().decode(lines[i])));
+            }
+            return new HandoverState(roundNumber, epoch, lastSeq, lines[2], window);
+        } catch (IllegalArgumentException | IndexOutOfBoundsException e) {
+            throw new IOException("Malformed handover: " + e.getMessage());
+        }
+    }
+}
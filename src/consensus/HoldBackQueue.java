@@ -2,13 +2,16 @@ package consensus;
 
 import networking.GameMessage;
 import networking.TcpMeshManager;
+import networking.NetworkConfig;
 import game.ClientGameState;
-import java.util.PriorityQueue;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.TimeUnit;
-import java.util.Comparator;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.function.Consumer;
 
 import static util.ConsolePrint.printError;
@@ -17,24 +20,46 @@ import static util.ConsolePrint.printConsensus;
 /**
  * Implements a hold-back queue to ensure in-order delivery of game messages.
  * Buffers out-of-order messages and requests retransmission of missing messages via NACKs.
+ * Ordering happens on the receiving thread; delivery to the application runs on a single delivery thread,
+ * so slow game logic never holds the queue lock or stalls network intake.
  */
 public class HoldBackQueue {
     private final ScheduledExecutorService nackScheduler = Executors.newSingleThreadScheduledExecutor();
     private ScheduledFuture<?> nackTimer;
     private static final int NACK_DELAY_MS = 500;
+    private static final int MAX_NACK_RANGES = 64;
 
-    private PriorityQueue<GameMessage> queue = new PriorityQueue<>(
-        Comparator.comparingLong(msg -> msg.sequenceNumber)
-    );
+    private final ReorderBuffer queue = new ReorderBuffer(NetworkConfig.HOLDBACK_WINDOW);
     
-    private long nextExpectedSeq = 1;
     private TcpMeshManager tcp; 
     private ClientGameState clientGame;
     private String leaderId = null;
     private boolean isProcessing = false;
 
+    // Leadership term being delivered and its first sequence number; sequence numbers continue across terms
+    private long epoch = 0;
+    private long epochFirstSeq = 1;
+    // Messages from a newer term that arrived before the term was announced
+    private final List<GameMessage> early = new ArrayList<>();
+    // Highest sequence number dropped for being beyond the window; everything up to it is missing too
+    private long highestBeyond = 0;
+
     private Consumer<GameMessage> onMessageReceived; 
 
+    private final Executor deliveryExecutor;
+    private final AtomicInteger pendingDeliveries = new AtomicInteger();
+
+    public HoldBackQueue() {
+        this(Executors.newSingleThreadExecutor());
+    }
+
+    /**
+     * @param deliveryExecutor Runs application callbacks. Must run tasks one at a time in submission order.
+     */
+    public HoldBackQueue(Executor deliveryExecutor) {
+        this.deliveryExecutor = deliveryExecutor;
+    }
+
     public void setCallback(Consumer<GameMessage> callback) {
         this.onMessageReceived = callback;
     }
@@ -58,12 +83,37 @@ public class HoldBackQueue {
     }
 
     public synchronized void addMessage(GameMessage msg) {
-        queue.add(msg);
+        if (msg.epoch != 0 && msg.epoch < epoch && msg.sequenceNumber >= epochFirstSeq) {
+            printError("[Queue] #" + msg.sequenceNumber + " is from superseded epoch " + msg.epoch + ". Dropped.");
+            return;
+        }
+        if (msg.epoch > epoch) {
+            // Held until the new leader's COORDINATOR or SYNC says where its epoch starts
+            if (early.size() >= queue.getWindow()) early.remove(0);
+            early.add(msg);
+            return;
+        }
+
+        if (offer(msg) == ReorderBuffer.Result.DUPLICATE) return;
+
         processQueue();
     }
 
     /**
-     * Processes the hold-back queue to deliver messages in order.
+     * Buffers a message, remembering how far ahead it was if it does not fit,
+     * so the gap behind it is still NACKed even when nothing else is buffered.
+     */
+    private ReorderBuffer.Result offer(GameMessage msg) {
+        ReorderBuffer.Result result = queue.offer(msg);
+        if (result == ReorderBuffer.Result.BEYOND_WINDOW) {
+            printError("[Queue] #" + msg.sequenceNumber + " is more than " + queue.getWindow() + " ahead of #" + queue.getNextExpected() + ". Dropped.");
+            highestBeyond = Math.max(highestBeyond, msg.sequenceNumber);
+        }
+        return result;
+    }
+
+    /**
+     * Processes the hold-back queue, handing messages to the delivery thread in order.
      * Sends NACKs for any missing messages.
      */
     private void processQueue() {
@@ -71,48 +121,144 @@ public class HoldBackQueue {
         isProcessing = true;
 
         try {
-            while (!queue.isEmpty()) {
-                GameMessage head = queue.peek();
-                printConsensus("[Queue] Processing #" + head.sequenceNumber + ", expecting #" + nextExpectedSeq);
-
-                if (head.sequenceNumber == nextExpectedSeq) {
-                    if (nackTimer != null && !nackTimer.isDone()) {
-                        nackTimer.cancel(false);
-                        nackTimer = null;
-                        printConsensus("[Recovered] Packet #" + nextExpectedSeq + " arrived naturally. NACK cancelled.");
-                    }
-
-                    queue.poll();
-                    nextExpectedSeq++; 
-                    deliverToApp(head);
-                } 
-                else if (head.sequenceNumber < nextExpectedSeq) {
-                    queue.poll();
-                } 
-                else {
-                    if (nackTimer == null || nackTimer.isDone()) {
-                        scheduleNack(nextExpectedSeq);
-                    }
-                    break;
+            GameMessage head;
+            while ((head = queue.poll()) != null) {
+                printConsensus("[Queue] Processing #" + head.sequenceNumber);
+
+                if (nackTimer != null && !nackTimer.isDone()) {
+                    nackTimer.cancel(false);
+                    nackTimer = null;
+                    printConsensus("[Recovered] Packet #" + head.sequenceNumber + " arrived naturally. NACK cancelled.");
                 }
+
+                hand(head);
+            }
+
+            boolean behind = queue.size() > 0 || highestBeyond >= queue.getNextExpected();
+            if (behind && (nackTimer == null || nackTimer.isDone())) {
+                scheduleNack(queue.getNextExpected());
             }
         } finally {
             isProcessing = false;
         }
     }
 
+    /**
+     * Passes a message to the delivery thread.
+     */
+    private void hand(GameMessage msg) {
+        pendingDeliveries.incrementAndGet();
+        deliveryExecutor.execute(() -> {
+            try {
+                deliverToApp(msg);
+            } catch (Exception e) {
+                printError("[Queue] Delivery of #" + msg.sequenceNumber + " failed: " + e.getMessage());
+            } finally {
+                pendingDeliveries.decrementAndGet();
+            }
+        });
+    }
+
+    /**
+     * Moves delivery to a new leader's epoch without throwing away what is already here.
+     * Buffered messages of the old epoch below firstSeq stay queued, and the gaps between them are NACKed to the new leader,
+     * which can repair them if the old leader handed over its window; otherwise it answers with a resync.
+     * Old messages at or beyond firstSeq were never seen by the new leader and are discarded.
+     * Messages of the new epoch that arrived early are then replayed.
+     * @param newEpoch The new leader's epoch.
+     * @param firstSeq The first sequence number the new leader will send.
+     */
+    public synchronized void beginEpoch(long newEpoch, long firstSeq) {
+        if (newEpoch <= epoch) return;
+        printConsensus("[Queue] Moving to epoch " + newEpoch + " at #" + firstSeq);
+
+        if (queue.getNextExpected() > firstSeq) {
+            queue.reset(firstSeq);
+        } else {
+            queue.discardFrom(firstSeq);
+        }
+        epoch = newEpoch;
+        epochFirstSeq = firstSeq;
+        highestBeyond = 0;
+        cancelNack();
+        replayEarly();
+    }
+
+    private void replayEarly() {
+        List<GameMessage> held = new ArrayList<>(early);
+        early.clear();
+        for (GameMessage msg : held) {
+            if (msg.epoch > epoch) early.add(msg);
+            else if (msg.epoch == epoch) offer(msg);
+        }
+        processQueue();
+    }
+
+    private void cancelNack() {
+        if (nackTimer != null) {
+            nackTimer.cancel(false);
+            nackTimer = null;
+        }
+    }
+
+    public synchronized long getEpoch() {
+        return epoch;
+    }
+
+    /**
+     * @return The sequence number that will be delivered next.
+     */
+    public synchronized long getNextExpected() {
+        return queue.getNextExpected();
+    }
+
+    /**
+     * Schedules a NACK for the gap at missingSeq. When it fires, the NACK lists every gap still open at that moment,
+     * so a burst loss is repaired with one request and one retransmission instead of one cycle per message.
+     * @param missingSeq The first missing sequence number.
+     */
     private void scheduleNack(long missingSeq) {
         printError("[Queue] Missing #" + missingSeq + ". Scheduling NACK in " + NACK_DELAY_MS + "ms");
         
         nackTimer = nackScheduler.schedule(() -> {
-            printError("[Timeout] Gap #" + missingSeq + " persisted. Sending NACK now.");
+            List<long[]> missing;
+            synchronized (this) {
+                missing = queue.missingRanges(MAX_NACK_RANGES);
+                long next = queue.getNextExpected();
+                if (missing.isEmpty() && highestBeyond >= next) {
+                    // Nothing fits in the window yet; ask for the window itself, or a resync if the leader no longer has it
+                    missing.add(new long[] {next, Math.min(highestBeyond, next + queue.getWindow() - 1)});
+                }
+                nackTimer = null;
+            }
+            if (missing.isEmpty()) return;
+
+            String ranges = NackRanges.encode(missing);
+            printError("[Timeout] Gap " + ranges + " persisted. Sending NACK now.");
             if (tcp != null && leaderId != null) {
-                tcp.sendNack(leaderId, missingSeq);
+                if (missing.size() == 1 && missing.get(0)[0] == missing.get(0)[1]) {
+                    tcp.sendNack(leaderId, missing.get(0)[0]);
+                } else {
+                    tcp.sendNack(leaderId, ranges);
+                }
             }
-            nackTimer = null;
         }, NACK_DELAY_MS, TimeUnit.MILLISECONDS);
     }
 
+    /**
+     * Sends a NACK right away for a message known to be lost, e.g. one whose fragments never all arrived.
+     * Does nothing if the message was already delivered.
+     * @param missingSeq The sequence number of the lost message.
+     */
+    public synchronized void reportMissing(long missingSeq) {
+        if (missingSeq < queue.getNextExpected() || queue.contains(missingSeq)) return;
+
+        printError("[Queue] #" + missingSeq + " was lost in transit. Sending NACK now.");
+        if (tcp != null && leaderId != null) {
+            tcp.sendNack(leaderId, missingSeq);
+        }
+    }
+
     /**
      * Forces the hold-back queue to synchronize to a specific sequence number.
      * Clears any buffered messages and updates the next expected sequence.
@@ -120,12 +266,34 @@ public class HoldBackQueue {
      */
     public synchronized void forceSync(long catchUpSeq) {
         printConsensus("[Queue] Syncing queue to Sequence #" + catchUpSeq);
-        this.nextExpectedSeq = catchUpSeq + 1;
-        queue.clear(); 
+        queue.reset(catchUpSeq + 1);
+        highestBeyond = 0;
+    }
+
+    /**
+     * Synchronizes to a sequence number within a specific epoch, e.g. when joining a running game.
+     * @param syncEpoch The leader's current epoch.
+     * @param catchUpSeq The sequence number to synchronize to.
+     */
+    public synchronized void forceSync(long syncEpoch, long catchUpSeq) {
+        forceSync(catchUpSeq);
+        if (syncEpoch == epoch) return;
+
+        epoch = syncEpoch;
+        epochFirstSeq = catchUpSeq + 1;
+        cancelNack();
+        replayEarly();
+    }
+
+    /**
+     * @return The number of ordered messages handed to the delivery thread but not yet delivered.
+     */
+    public int getPendingDeliveries() {
+        return pendingDeliveries.get();
     }
 
     /**
-     * Delivers a message to the application layer (ClientGameState).
+     * Delivers a message to the application layer (ClientGameState). Runs on the delivery thread.
      * @param msg The GameMessage being delivered.
      */
     private void deliverToApp(GameMessage msg) {
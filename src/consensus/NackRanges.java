@@ -0,0 +1,43 @@
+package consensus;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Text form of the sequence number ranges carried by a NACK, e.g. "5-9,12,15-16".
+ * A plain number is a single missing message, which is what older nodes send.
+ */
+public final class NackRanges {
+    private NackRanges() {}
+
+    /**
+     * @param ranges Inclusive [from, to] pairs in increasing order.
+     * @return The NACK payload.
+     */
+    public static String encode(List<long[]> ranges) {
+        StringBuilder sb = new StringBuilder();
+        for (long[] r : ranges) {
+            if (sb.length() > 0) sb.append(',');
+            sb.append(r[0]);
+            if (r[1] != r[0]) sb.append('-').append(r[1]);
+        }
+        return sb.toString();
+    }
+
+    /**
+     * @param payload A NACK payload.
+     * @return Inclusive [from, to] pairs.
+     * @throws NumberFormatException If the payload is malformed.
+     */
+    public static List<long[]> decode(String payload) {
+        List<long[]> ranges = new ArrayList<>();
+        for (String part : payload.split(",")) {
+            int dash = part.indexOf('-');
+            long from = Long.parseLong(dash < 0 ? part : part.substring(0, dash));
+            long to = dash < 0 ? from : Long.parseLong(part.substring(dash + 1));
+            if (to < from) throw new NumberFormatException("Empty range " + part);
+            ranges.add(new long[] {from, to});
+        }
+        return ranges;
+    }
+}
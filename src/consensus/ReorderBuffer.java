@@ -0,0 +1,154 @@
+package consensus;
+
+import networking.GameMessage;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Fixed window of slots for messages that arrived ahead of the next expected sequence number.
+ * A message with sequence number seq sits in slot seq mod window, so insert and in-order removal are O(1),
+ * and an occupancy bitmap spots duplicates as soon as they arrive instead of when they reach the head.
+ * Not thread-safe; HoldBackQueue guards it.
+ */
+public class ReorderBuffer {
+    public enum Result {
+        BUFFERED,
+        // Already delivered or already buffered
+        DUPLICATE,
+        // Too far ahead of the next expected message to buffer
+        BEYOND_WINDOW
+    }
+
+    private final GameMessage[] slots;
+    private final long[] occupied;
+
+    private long nextExpected = 1;
+    private long highestBuffered = 0;
+    private int buffered = 0;
+
+    /**
+     * @param window The number of sequence numbers, starting at the next expected one, that can be buffered.
+     */
+    public ReorderBuffer(int window) {
+        this.slots = new GameMessage[window];
+        this.occupied = new long[(window + 63) / 64];
+    }
+
+    /**
+     * Buffers a message until it can be delivered.
+     * @param msg The message, with its sequence number set.
+     * @return Whether the message was buffered, and if not, why.
+     */
+    public Result offer(GameMessage msg) {
+        long seq = msg.sequenceNumber;
+        if (seq < nextExpected) return Result.DUPLICATE;
+        if (seq - nextExpected >= slots.length) return Result.BEYOND_WINDOW;
+
+        int slot = slot(seq);
+        if (isOccupied(slot)) return Result.DUPLICATE;
+
+        slots[slot] = msg;
+        occupied[slot >>> 6] |= 1L << slot;
+        buffered++;
+        highestBuffered = Math.max(highestBuffered, seq);
+        return Result.BUFFERED;
+    }
+
+    /**
+     * Removes the next expected message if it has arrived.
+     * @return The message, or null if it is still missing.
+     */
+    public GameMessage poll() {
+        int slot = slot(nextExpected);
+        if (!isOccupied(slot)) return null;
+
+        GameMessage msg = slots[slot];
+        slots[slot] = null;
+        occupied[slot >>> 6] &= ~(1L << slot);
+        buffered--;
+        nextExpected++;
+        return msg;
+    }
+
+    /**
+     * @return True if the message with this sequence number is buffered.
+     */
+    public boolean contains(long seq) {
+        return seq >= nextExpected && seq - nextExpected < slots.length && isOccupied(slot(seq));
+    }
+
+    /**
+     * Lists the gaps between the next expected message and the highest one buffered.
+     * @param maxRanges The most ranges to return; later gaps are left for a later request.
+     * @return Inclusive [from, to] pairs in increasing order, empty if nothing is waiting behind a gap.
+     */
+    public List<long[]> missingRanges(int maxRanges) {
+        List<long[]> ranges = new ArrayList<>();
+        if (buffered == 0) return ranges;
+
+        long from = -1;
+        for (long seq = nextExpected; seq <= highestBuffered && ranges.size() < maxRanges; seq++) {
+            boolean missing = !isOccupied(slot(seq));
+            if (missing && from < 0) {
+                from = seq;
+            } else if (!missing && from >= 0) {
+                ranges.add(new long[] {from, seq - 1});
+                from = -1;
+            }
+        }
+        return ranges;
+    }
+
+    /**
+     * Drops the buffered messages at or above seq, keeping those below it and the gaps between them.
+     * @param seq The first sequence number to drop.
+     */
+    public void discardFrom(long seq) {
+        for (long s = Math.max(seq, nextExpected); s <= highestBuffered && buffered > 0; s++) {
+            int slot = slot(s);
+            if (!isOccupied(slot)) continue;
+
+            slots[slot] = null;
+            occupied[slot >>> 6] &= ~(1L << slot);
+            buffered--;
+        }
+        highestBuffered = Math.min(highestBuffered, seq - 1);
+    }
+
+    /**
+     * Drops everything buffered and moves the window.
+     * @param nextExpected The sequence number to deliver next.
+     */
+    public void reset(long nextExpected) {
+        Arrays.fill(slots, null);
+        Arrays.fill(occupied, 0);
+        this.nextExpected = nextExpected;
+        highestBuffered = 0;
+        buffered = 0;
+    }
+
+    public long getNextExpected() {
+        return nextExpected;
+    }
+
+    /**
+     * @return The number of messages waiting behind a gap.
+     */
+    public int size() {
+        return buffered;
+    }
+
+    public int getWindow() {
+        return slots.length;
+    }
+
+    private boolean isOccupied(int slot) {
+        return (occupied[slot >>> 6] & (1L << slot)) != 0;
+    }
+
+    private int slot(long seq) {
+        return (int) Math.floorMod(seq, (long) slots.length);
+    }
+}
@@ -0,0 +1,127 @@
+package consensus;
+
+import networking.GameMessage;
+
+import java.util.Arrays;
+
+/**
+ * Fixed-capacity ring of recently sequenced messages, indexed directly by sequence number, kept for retransmission.
+ * Entries leave the ring when their slot is reused, when the memory budget is exceeded, or when they are older
+ * than the retention window, so the leader's memory stays flat however long the game runs.
+ */
+public class RetransmitHistory {
+    // Rough per-entry cost of the message object and its fields, on top of the payload
+    private static final int ENTRY_OVERHEAD_BYTES = 64;
+
+    private final GameMessage[] messages;
+    private final long[] sentAt;
+    private final long maxBytes;
+    private final long retentionMs;
+
+    // Entries in [oldestSeq, newestSeq] are retained; empty when oldestSeq > newestSeq
+    private long oldestSeq = 1;
+    private long newestSeq = 0;
+    private long bytes = 0;
+
+    /**
+     * @param capacity The most entries kept.
+     * @param maxBytes The approximate memory budget for retained entries.
+     * @param retentionMs How long an entry stays available for retransmission.
+     */
+    public RetransmitHistory(int capacity, long maxBytes, long retentionMs) {
+        this.messages = new GameMessage[capacity];
+        this.sentAt = new long[capacity];
+        this.maxBytes = maxBytes;
+        this.retentionMs = retentionMs;
+    }
+
+    /**
+     * Records a newly sequenced message. Messages may arrive slightly out of order when several threads sequence at once.
+     * @param msg The message, with its sequence number set.
+     * @param now The current time in milliseconds.
+     */
+    public synchronized void put(GameMessage msg, long now) {
+        long seq = msg.sequenceNumber;
+        if (seq < oldestSeq) return;
+
+        // A jump past the whole ring leaves nothing worth keeping
+        if (seq - newestSeq > messages.length) clear(seq);
+
+        long size = sizeOf(msg);
+        while (oldestSeq <= newestSeq && (seq - oldestSeq >= messages.length || bytes + size > maxBytes)) {
+            evictOldest();
+        }
+        if (seq < oldestSeq) return;
+
+        // Numbers skipped by a concurrent sender may still be filled in later; they expire like any other entry
+        for (long gap = Math.max(newestSeq + 1, oldestSeq); gap < seq; gap++) {
+            sentAt[slot(gap)] = now;
+        }
+
+        int slot = slot(seq);
+        messages[slot] = msg;
+        sentAt[slot] = now;
+        bytes += size;
+        if (seq > newestSeq) newestSeq = seq;
+        expire(now);
+    }
+
+    /**
+     * @param seq The sequence number to look up.
+     * @param now The current time in milliseconds.
+     * @return The message, or null if it was never sent or is no longer retained.
+     */
+    public synchronized GameMessage get(long seq, long now) {
+        expire(now);
+        if (seq < oldestSeq || seq > newestSeq) return null;
+        return messages[slot(seq)];
+    }
+
+    /**
+     * @param seq A sequence number that is not retained.
+     * @return True if it was sent but has since been evicted, as opposed to never having been sent.
+     */
+    public synchronized boolean isEvicted(long seq) {
+        return seq > 0 && seq < oldestSeq;
+    }
+
+    /**
+     * Forgets every entry and restarts numbering from the given sequence number.
+     * @param nextSeq The sequence number the next put is expected to carry.
+     */
+    public synchronized void clear(long nextSeq) {
+        Arrays.fill(messages, null);
+        oldestSeq = nextSeq;
+        newestSeq = nextSeq - 1;
+        bytes = 0;
+    }
+
+    public synchronized int size() {
+        return (int) (newestSeq - oldestSeq + 1);
+    }
+
+    public synchronized long getRetainedBytes() {
+        return bytes;
+    }
+
+    private void expire(long now) {
+        while (oldestSeq <= newestSeq && now - sentAt[slot(oldestSeq)] > retentionMs) {
+            evictOldest();
+        }
+    }
+
+    private void evictOldest() {
+        int slot = slot(oldestSeq);
+        if (messages[slot] != null) bytes -= sizeOf(messages[slot]);
+        messages[slot] = null;
+        oldestSeq++;
+    }
+
+    private int slot(long seq) {
+        return (int) Math.floorMod(seq, (long) messages.length);
+    }
+
+    private static long sizeOf(GameMessage msg) {
+        return ENTRY_OVERHEAD_BYTES + (msg.payload != null ? msg.payload.length() : 0);
+    }
+}
@@ -0,0 +1,409 @@
+package consensus;
+
+import networking.BinaryMessageCodec;
+import networking.GameMessage;
+import networking.MessageCodec;
+import networking.NetworkConfig;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryNotEmptyException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32C;
+
+import static util.ConsolePrint.printConsensus;
+import static util.ConsolePrint.printError;
+
+/**
+ * Append-only write-ahead log of the sequenced message stream, kept in memory-mapped segment files.
+ *
+ * Record layout:
+ * - body length (4 bytes), where 0 marks the end of the written part of a segment
+ * - CRC32C of the body (4 bytes)
+ * - sequence number (8 bytes)
+ * - body: the message in the binary wire encoding
+ *
+ * Appends only copy into the mapping; dirty pages are forced to disk by a background flush every few milliseconds,
+ * so one fsync covers every message appended since the last one. Appends must come in increasing sequence order.
+ *
+ * The log is off unless a directory is configured. It holds the current leadership term only: the Sequencer clears it
+ * whenever this node starts a term, and the node deletes it on shutdown. Its directory is named after the node ID,
+ * which includes a port that is random unless configured.
+ * It moves retransmission history off the heap for the term in progress; it does not make the stream
+ * survive a leader crash, since a successor cannot read the crashed leader's disk and recovers from handover,
+ * standby replication or a resync instead.
+ */
+public class SequenceLog implements Closeable {
+    private static final int RECORD_HEADER = 16;
+    private static final String SUFFIX = ".seg";
+
+    // sun.misc.Unsafe.invokeCleaner, or null where it is unavailable and mappings are left to the garbage collector
+    private static final Object UNSAFE;
+    private static final Method INVOKE_CLEANER;
+    static {
+        Object unsafe = null;
+        Method invokeCleaner = null;
+        try {
+            Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+            Field theUnsafe = unsafeClass.getDeclaredField("theUnsafe");
+            theUnsafe.setAccessible(true);
+            unsafe = theUnsafe.get(null);
+            invokeCleaner = unsafeClass.getMethod("invokeCleaner", ByteBuffer.class);
+        } catch (Exception e) {
+            printError("[Log] Segments cannot be unmapped explicitly: " + e.getMessage());
+        }
+        UNSAFE = unsafe;
+        INVOKE_CLEANER = invokeCleaner;
+    }
+
+    private final Path dir;
+    private final int segmentBytes;
+    private final int maxSegments;
+    private final long flushIntervalMs;
+    private final MessageCodec codec = new BinaryMessageCodec();
+    private final CRC32C crc = new CRC32C();
+
+    private final ArrayDeque<Segment> segments = new ArrayDeque<>();
+    private ScheduledExecutorService flusher;
+    private boolean opened = false;
+    private boolean dirty = false;
+
+    // Everything below this was appended once but has since been deleted with its segment
+    private long evictedBefore = 0;
+
+    /**
+     * @param dir The directory holding this node's segments. Created on first use.
+     * @param segmentBytes The size of each segment file.
+     * @param maxSegments The most segments kept; the oldest is deleted when a new one would exceed this.
+     * @param flushIntervalMs How often appended records are forced to disk. 0 forces after every append.
+     */
+    public SequenceLog(Path dir, int segmentBytes, int maxSegments, long flushIntervalMs) {
+        this.dir = dir;
+        this.segmentBytes = segmentBytes;
+        this.maxSegments = maxSegments;
+        this.flushIntervalMs = flushIntervalMs;
+    }
+
+    /**
+     * Creates the log for this node from network.config.
+     * @param nodeId The ID of this node, which names its directory so several nodes can share a working directory.
+     * @return The log, or null if the log is disabled.
+     */
+    public static SequenceLog forNode(String nodeId) {
+        if (NetworkConfig.SEQUENCER_LOG_DIR.isBlank()) return null;
+        return new SequenceLog(Paths.get(NetworkConfig.SEQUENCER_LOG_DIR, nodeId.replace(':', '_')),
+            NetworkConfig.SEQUENCER_LOG_SEGMENT_BYTES, NetworkConfig.SEQUENCER_LOG_SEGMENTS, NetworkConfig.SEQUENCER_LOG_FLUSH_MS);
+    }
+
+    /**
+     * Appends a sequenced message.
+     * @param msg The message, with a sequence number higher than any appended before.
+     * @throws IOException If the segment cannot be created or mapped.
+     */
+    public synchronized void append(GameMessage msg) throws IOException {
+        open();
+
+        long seq = msg.sequenceNumber;
+        Segment active = segments.peekLast();
+        if (active != null && seq <= active.lastSeq) {
+            throw new IllegalArgumentException("#" + seq + " is not after #" + active.lastSeq);
+        }
+
+        byte[] body = codec.encode(msg);
+        int recordBytes = RECORD_HEADER + body.length;
+        // Leave room for the end marker
+        if (active == null || active.map.remaining() < recordBytes + 4) {
+            active = roll(seq, recordBytes + 4);
+        }
+
+        crc.reset();
+        crc.update(body);
+
+        MappedByteBuffer map = active.map;
+        int position = map.position();
+        map.putInt(body.length).putInt((int) crc.getValue()).putLong(seq).put(body);
+        active.index(seq, position);
+        dirty = true;
+
+        if (flushIntervalMs == 0) force();
+    }
+
+    /**
+     * Reads a message back from the log.
+     * @param seq The sequence number.
+     * @return The message, or null if it is not in the log.
+     */
+    public synchronized GameMessage read(long seq) {
+        if (!opened) openQuietly();
+
+        Iterator<Segment> it = segments.descendingIterator();
+        while (it.hasNext()) {
+            Segment s = it.next();
+            if (seq < s.firstSeq) continue;
+
+            int position = s.positionOf(seq);
+            if (position < 0) return null;
+
+            MappedByteBuffer view = s.map.duplicate();
+            int length = view.getInt(position);
+            byte[] body = new byte[length];
+            view.get(position + RECORD_HEADER, body);
+            try {
+                return codec.decode(body);
+            } catch (IOException e) {
+                printError("[Log] Record #" + seq + " in " + s.file.getFileName() + " is unreadable: " + e.getMessage());
+                return null;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @return True if the message was appended once but its segment has since been deleted.
+     */
+    public synchronized boolean isEvicted(long seq) {
+        return seq >= 1 && seq < evictedBefore;
+    }
+
+    /**
+     * @return The highest sequence number in the log, or 0 if it is empty.
+     */
+    public synchronized long getLastSeq() {
+        if (!opened) openQuietly();
+        Segment active = segments.peekLast();
+        return active != null ? active.lastSeq : 0;
+    }
+
+    public synchronized int getSegmentCount() {
+        return segments.size();
+    }
+
+    /**
+     * Deletes the segments that hold nothing after seq, once a snapshot covers them. The active segment is kept.
+     * @param seq The sequence number the latest snapshot was taken at.
+     * @return The number of segments deleted.
+     * @throws IOException If a segment cannot be deleted.
+     */
+    public synchronized int compact(long seq) throws IOException {
+        int deleted = 0;
+        while (segments.size() > 1 && segments.peekFirst().lastSeq <= seq) {
+            Segment oldest = segments.pollFirst();
+            evictedBefore = Math.max(evictedBefore, oldest.lastSeq + 1);
+            discard(oldest);
+            deleted++;
+        }
+        return deleted;
+    }
+
+    /**
+     * Deletes every segment, for when sequence numbering restarts.
+     * @throws IOException If a segment cannot be deleted.
+     */
+    public synchronized void reset() throws IOException {
+        open();
+        while (!segments.isEmpty()) discard(segments.pollFirst());
+        evictedBefore = 0;
+        dirty = false;
+    }
+
+    /**
+     * Forces every record appended so far to disk.
+     */
+    public synchronized void force() {
+        if (!dirty) return;
+        Segment active = segments.peekLast();
+        if (active != null) active.map.force();
+        dirty = false;
+    }
+
+    /**
+     * Closes the log and removes its segments and, unless snapshots are kept in it, its directory, e.g. when the node shuts down.
+     * The log only serves the term in progress, so nothing in it is needed once the node is gone.
+     */
+    public synchronized void delete() {
+        List<Path> files = new ArrayList<>();
+        for (Segment s : segments) files.add(s.file);
+        close();
+
+        try {
+            for (Path file : files) Files.deleteIfExists(file);
+            Files.deleteIfExists(dir);
+        } catch (DirectoryNotEmptyException e) {
+            // The snapshots kept next to the log are meant to outlive the node
+        } catch (IOException e) {
+            printError("[Log] Could not remove " + dir + ": " + e.getMessage());
+        }
+    }
+
+    @Override
+    public synchronized void close() {
+        force();
+        if (flusher != null) flusher.shutdownNow();
+        while (!segments.isEmpty()) unmap(segments.pollFirst().map);
+        opened = false;
+    }
+
+    /**
+     * Recovers the segments already on disk and starts the background flush.
+     */
+    private void open() throws IOException {
+        if (opened) return;
+        Files.createDirectories(dir);
+
+        List<Path> files = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(dir, "*" + SUFFIX)) {
+            for (Path file : stream) files.add(file);
+        }
+        files.sort(null);
+        for (Path file : files) {
+            Segment s = recover(file);
+            if (s != null) segments.addLast(s);
+        }
+
+        if (!segments.isEmpty()) {
+            printConsensus("[Log] Recovered " + segments.size() + " segment(s) up to #" + segments.peekLast().lastSeq);
+        }
+
+        if (flushIntervalMs > 0) {
+            flusher = Executors.newSingleThreadScheduledExecutor();
+            flusher.scheduleWithFixedDelay(this::force, flushIntervalMs, flushIntervalMs, TimeUnit.MILLISECONDS);
+        }
+        opened = true;
+    }
+
+    private void openQuietly() {
+        try {
+            open();
+        } catch (IOException e) {
+            printError("[Log] Cannot open " + dir + ": " + e.getMessage());
+        }
+    }
+
+    /**
+     * Maps an existing segment and indexes its records, stopping at the end marker or at the first torn record.
+     */
+    private Segment recover(Path file) throws IOException {
+        long firstSeq;
+        try {
+            firstSeq = Long.parseLong(file.getFileName().toString().replace(SUFFIX, ""));
+        } catch (NumberFormatException e) {
+            return null;
+        }
+
+        Segment s = new Segment(file, firstSeq, map(file, Files.size(file)));
+        MappedByteBuffer map = s.map;
+        while (map.remaining() >= RECORD_HEADER) {
+            int position = map.position();
+            int length = map.getInt(position);
+            if (length <= 0 || length > map.limit() - position - RECORD_HEADER) break;
+
+            byte[] body = new byte[length];
+            map.get(position + RECORD_HEADER, body);
+            crc.reset();
+            crc.update(body);
+            long seq = map.getLong(position + 8);
+            if (map.getInt(position + 4) != (int) crc.getValue() || seq <= s.lastSeq) break;
+
+            s.index(seq, position);
+            map.position(position + RECORD_HEADER + length);
+        }
+
+        // Clear anything after the last good record so it cannot be mistaken for data later
+        if (map.remaining() >= 4) map.putInt(map.position(), 0);
+        return s;
+    }
+
+    /**
+     * Starts a new segment at seq, deleting the oldest once there are too many.
+     */
+    private Segment roll(long seq, int minBytes) throws IOException {
+        Segment previous = segments.peekLast();
+        if (previous != null) previous.map.force();
+
+        Path file = dir.resolve(String.format("%020d%s", seq, SUFFIX));
+        Segment s = new Segment(file, seq, map(file, Math.max(segmentBytes, minBytes)));
+        segments.addLast(s);
+
+        while (segments.size() > maxSegments) {
+            Segment oldest = segments.pollFirst();
+            evictedBefore = Math.max(evictedBefore, oldest.lastSeq + 1);
+            discard(oldest);
+        }
+        return s;
+    }
+
+    /**
+     * Unmaps a segment before deleting it; a file that is still mapped cannot be deleted on Windows.
+     */
+    private static void discard(Segment s) throws IOException {
+        unmap(s.map);
+        Files.deleteIfExists(s.file);
+    }
+
+    /**
+     * Releases a mapping now rather than when the buffer is garbage collected. The buffer must not be touched afterwards.
+     */
+    private static void unmap(MappedByteBuffer map) {
+        if (INVOKE_CLEANER == null) return;
+        try {
+            INVOKE_CLEANER.invoke(UNSAFE, map);
+        } catch (Exception e) {
+            printError("[Log] Could not unmap a segment: " + e.getMessage());
+        }
+    }
+
+    private static MappedByteBuffer map(Path file, long size) throws IOException {
+        try (FileChannel ch = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            return ch.map(FileChannel.MapMode.READ_WRITE, 0, size);
+        }
+    }
+
+    private static final class Segment {
+        final Path file;
+        final MappedByteBuffer map;
+        final long firstSeq;
+        long lastSeq;
+        // Record positions indexed by seq - firstSeq, -1 where a number was skipped
+        int[] positions = new int[256];
+
+        Segment(Path file, long firstSeq, MappedByteBuffer map) {
+            this.file = file;
+            this.firstSeq = firstSeq;
+            this.lastSeq = firstSeq - 1;
+            this.map = map;
+        }
+
+        void index(long seq, int position) {
+            int i = (int) (seq - firstSeq);
+            if (i >= positions.length) {
+                int old = positions.length;
+                positions = Arrays.copyOf(positions, Math.max(old * 2, i + 1));
+                Arrays.fill(positions, old, positions.length, -1);
+            }
+            for (long skipped = lastSeq + 1; skipped < seq; skipped++) positions[(int) (skipped - firstSeq)] = -1;
+            positions[i] = position;
+            lastSeq = seq;
+        }
+
+        int positionOf(long seq) {
+            return seq <= lastSeq ? positions[(int) (seq - firstSeq)] : -1;
+        }
+    }
+}
@@ -2,10 +2,18 @@ package consensus;
 
 import networking.UdpMulticastManager;
 import networking.GameMessage;
+import networking.NetworkConfig;
 import networking.TcpMeshManager;
 
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicLong;
-import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.LockSupport;
 
 import static util.ConsolePrint.printError;
 import static util.ConsolePrint.printConsensus;
@@ -13,70 +21,429 @@ import static util.ConsolePrint.printConsensus;
 /**
  * Manages the sequencing of game actions in the Resilient Hold'em game.
  * Assigns global sequence numbers to actions and handles retransmission requests.
+ * A single writer at a time numbers queued actions in contiguous batches and sends them, so numbering and send order agree.
  */
 public class Sequencer {
+    /**
+     * Outcome of a retransmission request.
+     */
+    public enum NackResult {
+        RESENT,
+        // Sent once but no longer retained; the requester needs a state transfer instead
+        TOO_OLD,
+        // Not sent yet, or not a valid request
+        UNKNOWN
+    }
+
     private UdpMulticastManager udpLayer;
     
     private AtomicLong globalSequenceId = new AtomicLong(0);
+
+    // This leadership's term and the first number it sequenced; earlier numbers belong to previous leaders
+    private volatile long epoch = 0;
+    private volatile long epochFirstSeq = 1;
     
-    private ConcurrentHashMap<Long, GameMessage> historyBuffer = new ConcurrentHashMap<>();
+    private final RetransmitHistory history = new RetransmitHistory(
+        NetworkConfig.SEQUENCER_HISTORY_CAPACITY, NetworkConfig.SEQUENCER_HISTORY_MAX_BYTES, NetworkConfig.SEQUENCER_HISTORY_RETENTION_MS);
     
+    // Actions waiting to be numbered; any thread may offer, only the writer polls
+    private final ConcurrentLinkedQueue<Queued> pending = new ConcurrentLinkedQueue<>();
+    // Held by the one thread currently numbering and sending
+    private final AtomicBoolean writing = new AtomicBoolean(false);
+    private static final int MAX_BATCH = 256;
+
+    // Off-heap record of this term's stream; when present, NACKs are repaired from it instead of the in-memory history
+    private final SequenceLog log;
+    // Periodic table states; the log behind each one is compacted away
+    private final SnapshotStore snapshots;
+    // The newest sequenced table state, the starting point for catching up a node
+    private volatile GameMessage latestState;
+
     private TcpMeshManager tcpLayer;
 
+    /**
+     * An action waiting to be numbered, with whoever wants to know the number it gets.
+     */
+    private static final class Queued {
+        final GameMessage request;
+        // Null unless the caller asked for the sequenced message
+        final CompletableFuture<GameMessage> sequenced;
+
+        Queued(GameMessage request, CompletableFuture<GameMessage> sequenced) {
+            this.request = request;
+            this.sequenced = sequenced;
+        }
+    }
+
     public Sequencer(UdpMulticastManager udpLayer, TcpMeshManager tcp) {
+        this(udpLayer, tcp, null, null);
+    }
+
+    /**
+     * @param log The write-ahead log for the sequenced stream, or null to keep only the in-memory history.
+     * @param snapshots Where sequenced GAME_STATEs are snapshotted, or null to disable snapshots.
+     */
+    public Sequencer(UdpMulticastManager udpLayer, TcpMeshManager tcp, SequenceLog log, SnapshotStore snapshots) {
         this.udpLayer = udpLayer;
         this.tcpLayer = tcp;
+        this.log = log;
+        this.snapshots = snapshots;
     }
 
     public long getCurrentSeqId() {
         return globalSequenceId.get();
     }
 
-    public void resetSeqId() {
-        globalSequenceId = new AtomicLong(0);
+    public long getEpoch() {
+        return epoch;
+    }
+
+    /**
+     * @return "epoch:firstSeq", announced with COORDINATOR so followers know where this epoch starts.
+     */
+    public String getEpochStart() {
+        return epoch + ":" + epochFirstSeq;
+    }
+
+    /**
+     * @return "epoch:seq" for a SYNC to the current position.
+     */
+    public String getSyncPoint() {
+        return epoch + ":" + globalSequenceId.get();
+    }
+
+    /**
+     * Starts a new leadership term that continues the sequence where the previous leader's stream reached this node,
+     * so followers keep their queues instead of resetting. Messages from earlier terms cannot be repaired by this node.
+     * @param newEpoch The new term, higher than any this node has seen.
+     * @param lastSeq The last sequence number this node delivered; the term starts at the one after it.
+     */
+    public void startEpoch(long newEpoch, long lastSeq) {
+        startEpoch(newEpoch, lastSeq, List.of());
+    }
+
+    /**
+     * Starts a new leadership term handed over by the previous leader, keeping its recent messages
+     * so followers' gaps from the previous term can still be repaired by this node.
+     * @param newEpoch The new term, higher than any this node has seen.
+     * @param lastSeq The last sequence number of the previous term; this term starts at the one after it.
+     * @param inherited The previous leader's retained messages up to lastSeq, in sequence order.
+     */
+    public void startEpoch(long newEpoch, long lastSeq, List<GameMessage> inherited) {
+        while (!writing.compareAndSet(false, true)) Thread.onSpinWait();
+        try {
+            globalSequenceId = new AtomicLong(lastSeq);
+            epoch = newEpoch;
+            epochFirstSeq = lastSeq + 1;
+
+            // Inherited messages sit below this term in the same history, so one lookup serves both
+            long now = System.currentTimeMillis();
+            history.clear(inherited.isEmpty() ? lastSeq + 1 : inherited.get(0).sequenceNumber);
+            for (GameMessage msg : inherited) {
+                if (msg.sequenceNumber > lastSeq) continue;
+                history.put(msg, now);
+                noteState(msg);
+            }
+
+            // Whatever is in the log is from an earlier term of this node and may have been superseded since;
+            // the log only ever serves the term in progress
+            if (log != null) {
+                try {
+                    log.reset();
+                } catch (IOException e) {
+                    printError("[Sequencer] Could not clear the sequence log: " + e.getMessage());
+                }
+            }
+        } finally {
+            writing.set(false);
+        }
+        printConsensus("[Sequencer] Epoch " + newEpoch + " starts at #" + (lastSeq + 1)
+            + (inherited.isEmpty() ? "" : " with " + inherited.size() + " inherited message(s)"));
+        drain();
+    }
+
+    /**
+     * Collects this term's most recent messages for a handover, so the successor can repair what followers are missing.
+     * @param max The most messages to collect.
+     * @return The retained messages, oldest first, ending at the current sequence number.
+     */
+    public List<GameMessage> exportWindow(int max) {
+        return exportWindow(globalSequenceId.get(), max);
+    }
+
+    /**
+     * @param lastSeq The last message of the handover, e.g. the HANDOVER marker's own number.
+     * @param max The most messages to collect.
+     * @return The retained messages of this term, oldest first, ending at lastSeq.
+     */
+    public List<GameMessage> exportWindow(long lastSeq, int max) {
+        return collect(lastSeq, epochFirstSeq, max, log != null);
+    }
+
+    /**
+     * Keeps a message another leader sequenced, for a standby that may have to repair it after taking over.
+     * @param msg The delivered message.
+     */
+    public void replicate(GameMessage msg) {
+        history.put(msg, System.currentTimeMillis());
+        noteState(msg);
+    }
+
+    /**
+     * @param lastSeq The last message the standby delivered.
+     * @param max The most messages to collect.
+     * @return The replicated messages up to lastSeq, oldest first, stopping at the first one not retained.
+     */
+    public List<GameMessage> replicatedWindow(long lastSeq, int max) {
+        return collect(lastSeq, 1, max, false);
+    }
+
+    private List<GameMessage> collect(long newest, long oldest, int max, boolean fromLog) {
+        long now = System.currentTimeMillis();
+        List<GameMessage> window = new ArrayList<>();
+        for (long seq = newest; seq >= oldest && window.size() < max; seq--) {
+            GameMessage msg = fromLog ? retained(seq, now) : history.get(seq, now);
+            if (msg == null) break;
+            window.add(msg);
+        }
+        Collections.reverse(window);
+        return window;
     }
 
     /**
      * Multicasts a game action (after validating it) with a global sequence number.
+     * Safe to call from any thread: the action joins a lock-free queue, and whichever caller holds the writer role
+     * numbers and sends everything queued, so sequence numbers always leave this node in order.
+     * A caller that finds another thread writing returns at once; its action goes out in that writer's next batch.
      * @param originalRequest The original game action message to be multicast.
      */
     public void multicastAction(GameMessage originalRequest) {
-        long seqId = globalSequenceId.incrementAndGet();
+        pending.offer(new Queued(originalRequest, null));
+        drain();
+    }
 
-        GameMessage.Type typeToSend = originalRequest.type;
-        if (typeToSend == GameMessage.Type.ACTION_REQUEST) {
-            typeToSend = GameMessage.Type.PLAYER_ACTION;
+    /**
+     * Multicasts a game action like multicastAction and reports the message it became.
+     * A caller that found another thread writing cannot read its number from getCurrentSeqId,
+     * since the action may not have been numbered yet when the call returns.
+     * @param originalRequest The original game action message to be multicast.
+     * @return Completed with the sequenced message once it has left the multicast batch, on whichever thread sent it.
+     */
+    public CompletableFuture<GameMessage> multicastSequenced(GameMessage originalRequest) {
+        CompletableFuture<GameMessage> sequenced = new CompletableFuture<>();
+        pending.offer(new Queued(originalRequest, sequenced));
+        drain();
+        return sequenced;
+    }
+
+    /**
+     * Takes the writer role while there is work and nobody else holds it.
+     * The queue is checked again after the role is released, so an action queued during the release is never stranded.
+     */
+    private void drain() {
+        while (!pending.isEmpty() && writing.compareAndSet(false, true)) {
+            try {
+                lingerForBatch();
+                Queued[] batch;
+                while ((batch = takeBatch()) != null) sequenceBatch(batch);
+            } finally {
+                writing.set(false);
+            }
+        }
+    }
+
+    /**
+     * Group commit: waits up to the configured window for concurrent callers to queue more actions,
+     * so a burst is numbered, logged and sent as one batch.
+     */
+    private void lingerForBatch() {
+        long windowNanos = NetworkConfig.SEQUENCER_GROUP_COMMIT_US * 1000L;
+        if (windowNanos <= 0) return;
+
+        long deadline = System.nanoTime() + windowNanos;
+        int seen = 0;
+        while (System.nanoTime() < deadline) {
+            int queued = pending.size();
+            // Stop as soon as the burst has gone quiet or a batch is full
+            if (queued >= MAX_BATCH || (queued == seen && seen > 1)) return;
+            seen = queued;
+            LockSupport.parkNanos(Math.min(windowNanos / 4 + 1, deadline - System.nanoTime()));
+        }
+    }
+
+    private Queued[] takeBatch() {
+        Queued first = pending.poll();
+        if (first == null) return null;
+
+        List<Queued> batch = new ArrayList<>();
+        batch.add(first);
+        Queued next;
+        while (batch.size() < MAX_BATCH && (next = pending.poll()) != null) batch.add(next);
+        return batch.toArray(new Queued[0]);
+    }
+
+    /**
+     * Numbers a batch with one contiguous range, records it for retransmission, then sends it in order.
+     * Only the writer calls this.
+     */
+    private void sequenceBatch(Queued[] batch) {
+        long firstSeq = globalSequenceId.get() + 1;
+        long now = System.currentTimeMillis();
+        GameMessage[] ordered = new GameMessage[batch.length];
+
+        for (int i = 0; i < batch.length; i++) {
+            GameMessage.Type typeToSend = batch[i].request.type;
+            if (typeToSend == GameMessage.Type.ACTION_REQUEST) {
+                typeToSend = GameMessage.Type.PLAYER_ACTION;
+            }
+            ordered[i] = new GameMessage(typeToSend, batch[i].request.payload, firstSeq + i);
+            ordered[i].epoch = epoch;
+
+            if (log != null) {
+                try {
+                    log.append(ordered[i]);
+                    continue;
+                } catch (IOException | IllegalArgumentException e) {
+                    // e.g. the log holds a later number recovered from before this term; keep the message for NACKs anyway
+                    printError("[Sequencer] Could not log #" + ordered[i].sequenceNumber + ": " + e.getMessage());
+                }
+            }
+            history.put(ordered[i], now);
+        }
+        globalSequenceId.addAndGet(batch.length);
+
+        for (GameMessage orderedMsg : ordered) {
+            printConsensus("[Sequencer] Multicasting #" + orderedMsg.sequenceNumber + " (" + orderedMsg.type + ").");
+            udpLayer.sendMulticast(orderedMsg);
+
+            if (orderedMsg.type == GameMessage.Type.GAME_STATE) {
+                noteState(orderedMsg);
+                snapshot(orderedMsg);
+            }
         }
 
-        GameMessage orderedMsg = new GameMessage(typeToSend, originalRequest.payload, seqId);
+        // A caller waiting on its message acts on it next, e.g. sends the handover over TCP, so it must be on the wire
+        boolean awaited = false;
+        for (Queued queued : batch) awaited |= queued.sequenced != null;
+        if (awaited) udpLayer.flush();
+
+        for (int i = 0; i < batch.length; i++) {
+            if (batch[i].sequenced != null) batch[i].sequenced.complete(ordered[i]);
+        }
+    }
 
-        historyBuffer.put(seqId, orderedMsg);
-        printConsensus("[Sequencer] Multicasting #" + seqId + " (" + typeToSend + ").");
+    private void noteState(GameMessage msg) {
+        GameMessage current = latestState;
+        if (msg.type == GameMessage.Type.GAME_STATE && (current == null || msg.sequenceNumber > current.sequenceNumber)) {
+            latestState = msg;
+        }
+    }
 
-        udpLayer.sendMulticast(orderedMsg); 
+    /**
+     * @return The retained copy of a sequenced message, or null if it is not retained.
+     */
+    private GameMessage retained(long seq, long now) {
+        // Earlier leaders' messages are only in the history, whatever this node handed over or replicated
+        if (seq < epochFirstSeq || log == null) return history.get(seq, now);
+        // Messages the log refused are kept in the history instead, and take precedence over whatever the log holds for them
+        GameMessage kept = history.get(seq, now);
+        return kept != null ? kept : log.read(seq);
+    }
+
+    /**
+     * Snapshots a sequenced table state if enough has been sequenced since the last one,
+     * then drops the log segments the snapshot makes redundant.
+     * @param stateMsg The sequenced GAME_STATE message.
+     */
+    private void snapshot(GameMessage stateMsg) {
+        if (snapshots == null || !snapshots.offer(stateMsg.epoch, stateMsg.sequenceNumber, stateMsg.payload)) return;
+        if (log == null) return;
+
+        try {
+            int deleted = log.compact(stateMsg.sequenceNumber);
+            if (deleted > 0) printConsensus("[Sequencer] Snapshot at #" + stateMsg.sequenceNumber + ". Compacted " + deleted + " log segment(s).");
+        } catch (IOException e) {
+            printError("[Sequencer] Could not compact the sequence log: " + e.getMessage());
+        }
     }
 
     /**
-     * Handles a NACK message requesting retransmission of a missing message.
-     * @param nackMsg The NACK message containing the missing sequence number.
+     * Brings a node up to date from the newest sequenced table state, sent as one ordered TCP batch:
+     * a SYNC to that state's sequence number, the state as an unsequenced GAME_STATE, then every later message.
+     * Table states are sequenced at least once per turn, so the tail is short; the snapshots on disk
+     * are only for restarting this node and compacting its log.
+     * @param peerId The ID of the node to catch up.
+     * @return False if no state has been sequenced or the tail after it is no longer retained; the caller must fall back to a plain SYNC.
+     */
+    public boolean sendCatchUp(String peerId) {
+        GameMessage state = latestState;
+        long newest = globalSequenceId.get();
+        if (state == null || state.sequenceNumber > newest) return false;
+
+        long now = System.currentTimeMillis();
+        List<GameMessage> batch = new ArrayList<>();
+        batch.add(new GameMessage(GameMessage.Type.SYNC, epoch + ":" + state.sequenceNumber));
+        batch.add(new GameMessage(GameMessage.Type.GAME_STATE, state.payload));
+        for (long seq = state.sequenceNumber + 1; seq <= newest; seq++) {
+            GameMessage msg = retained(seq, now);
+            if (msg == null) return false;
+            batch.add(msg);
+        }
+
+        printConsensus("[Sequencer] Catching up Node " + peerId + " from state #" + state.sequenceNumber + " plus " + (batch.size() - 2) + " message(s).");
+        tcpLayer.sendToPeer(peerId, batch);
+        return true;
+    }
+
+    /**
+     * Handles a NACK message requesting retransmission of missing messages.
+     * The payload is either one sequence number or a list of ranges; every retained message asked for
+     * is resent to the requester in one batched TCP send, even if some others are no longer retained.
+     * @param nackMsg The NACK message containing the missing sequence numbers.
      * @param requestorId The ID of the node requesting the retransmission.
+     * @return TOO_OLD if any requested message has left the history, in which case the caller should resync the requester.
      */
-    public void handleNack(GameMessage nackMsg, String requestorId) {
+    public NackResult handleNack(GameMessage nackMsg, String requestorId) {
         try {
-            long missingSeq = Long.parseLong(nackMsg.payload);
-            printConsensus("[Sequencer] Node " + requestorId + " requesting retransmission of #" + missingSeq);
-            
-            if (historyBuffer.containsKey(missingSeq)) {
-                GameMessage oldMsg = historyBuffer.get(missingSeq);
-                
-                printConsensus("[Sequencer] Resending #" + missingSeq + " to Node " + requestorId);
-                
-                tcpLayer.sendToPeer(requestorId, oldMsg);
-            } else {
-                printError("[Sequencer] Cannot repair #" + missingSeq + " (Not in history)");
+            List<long[]> ranges = NackRanges.decode(nackMsg.payload);
+            printConsensus("[Sequencer] Node " + requestorId + " requesting retransmission of #" + nackMsg.payload);
+
+            long now = System.currentTimeMillis();
+            long newest = globalSequenceId.get();
+            List<GameMessage> resend = new ArrayList<>();
+            boolean tooOld = false;
+
+            for (long[] range : ranges) {
+                for (long seq = Math.max(range[0], 1); seq <= Math.min(range[1], newest); seq++) {
+                    GameMessage oldMsg = retained(seq, now);
+                    if (oldMsg != null) {
+                        resend.add(oldMsg);
+                    } else if (seq < epochFirstSeq || (log != null ? log.isEvicted(seq) : history.isEvicted(seq))) {
+                        // An earlier leader's message that was not handed over, or one of ours that was evicted
+                        tooOld = true;
+                    }
+                }
+            }
+
+            if (!resend.isEmpty()) {
+                printConsensus("[Sequencer] Resending " + resend.size() + " message(s) to Node " + requestorId);
+                if (resend.size() == 1) {
+                    tcpLayer.sendToPeer(requestorId, resend.get(0));
+                } else {
+                    tcpLayer.sendToPeer(requestorId, resend);
+                }
             }
+
+            if (tooOld) {
+                printError("[Sequencer] Cannot repair all of #" + nackMsg.payload + " (too old, resync needed)");
+                return NackResult.TOO_OLD;
+            }
+            if (!resend.isEmpty()) return NackResult.RESENT;
+
+            printError("[Sequencer] Cannot repair #" + nackMsg.payload + " (Not in history)");
         } catch (Exception e) {
             e.printStackTrace();
         }
+        return NackResult.UNKNOWN;
     }
-}
\ No newline at end of file
+}
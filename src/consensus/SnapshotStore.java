@@ -0,0 +1,218 @@
+package consensus;
+
+import networking.NetworkConfig;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.CRC32C;
+
+import static util.ConsolePrint.printError;
+
+/**
+ * Keeps the latest snapshots of the game state on disk, each tagged with the epoch and sequence number it was taken at.
+ *
+ * File layout:
+ * - magic (4 bytes) and format version (1 byte)
+ * - generation (8 bytes): increases with every save, so the newest snapshot wins even after numbering restarts
+ * - epoch (8 bytes)
+ * - sequence number (8 bytes)
+ * - state length (4 bytes) and the state as UTF-8
+ * - CRC32C of everything before it (4 bytes)
+ *
+ * Snapshots are written to a temporary file and renamed into place, so a crash never leaves a half-written one.
+ * The directory is named after the node ID, so only a node restarted on the same port finds its snapshots;
+ * set the port in network.config for restarts to resume.
+ */
+public class SnapshotStore {
+    private static final int MAGIC = 0x534E4150; // "SNAP"
+    private static final byte FORMAT_VERSION = 2;
+    private static final int HEADER = 4 + 1 + 8 + 8 + 8 + 4;
+    private static final String SUFFIX = ".snap";
+    // The previous snapshot is kept as a fallback in case the newest is unreadable
+    private static final int KEEP = 2;
+
+    /**
+     * A state taken at a sequence boundary: it includes every message up to and including seq.
+     */
+    public static final class Snapshot {
+        public final long epoch;
+        public final long seq;
+        public final String state;
+
+        Snapshot(long epoch, long seq, String state) {
+            this.epoch = epoch;
+            this.seq = seq;
+            this.state = state;
+        }
+    }
+
+    private final Path dir;
+    private final int interval;
+
+    private long generation = -1;
+    private long lastSeq = 0;
+    private Snapshot latest;
+
+    /**
+     * @param dir The directory holding this node's snapshots. Created on first save.
+     * @param interval The fewest sequence numbers between two snapshots taken by offer.
+     */
+    public SnapshotStore(Path dir, int interval) {
+        this.dir = dir;
+        this.interval = interval;
+    }
+
+    /**
+     * Creates the snapshot store for this node from network.config, next to its sequence log.
+     * @param nodeId The ID of this node.
+     * @return The store, or null if snapshots are disabled.
+     */
+    public static SnapshotStore forNode(String nodeId) {
+        if (NetworkConfig.SEQUENCER_LOG_DIR.isBlank() || NetworkConfig.SNAPSHOT_INTERVAL <= 0) return null;
+        return new SnapshotStore(Paths.get(NetworkConfig.SEQUENCER_LOG_DIR, nodeId.replace(':', '_'), "snapshots"),
+            NetworkConfig.SNAPSHOT_INTERVAL);
+    }
+
+    /**
+     * Saves the state if enough messages have been sequenced since the last snapshot, or if numbering restarted.
+     * @param epoch The epoch of the message carrying the state.
+     * @param seq The sequence number the state was taken at.
+     * @param state The serialized state.
+     * @return True if a snapshot was written.
+     */
+    public synchronized boolean offer(long epoch, long seq, String state) {
+        load();
+        if (latest != null && seq >= lastSeq && seq - lastSeq < interval) return false;
+
+        try {
+            save(epoch, seq, state);
+            return true;
+        } catch (IOException e) {
+            printError("[Snapshot] Could not save snapshot at #" + seq + ": " + e.getMessage());
+            return false;
+        }
+    }
+
+    /**
+     * Writes a snapshot unconditionally.
+     * @param epoch The epoch of the message carrying the state.
+     * @param seq The sequence number the state was taken at.
+     * @param state The serialized state.
+     * @throws IOException If the snapshot cannot be written.
+     */
+    public synchronized void save(long epoch, long seq, String state) throws IOException {
+        load();
+        Files.createDirectories(dir);
+
+        byte[] bytes = state.getBytes(StandardCharsets.UTF_8);
+        ByteBuffer buf = ByteBuffer.allocate(HEADER + bytes.length + 4);
+        buf.putInt(MAGIC).put(FORMAT_VERSION).putLong(generation + 1).putLong(epoch).putLong(seq).putInt(bytes.length).put(bytes);
+        CRC32C crc = new CRC32C();
+        crc.update(buf.array(), 0, buf.position());
+        buf.putInt((int) crc.getValue());
+
+        Path file = dir.resolve(String.format("%020d%s", generation + 1, SUFFIX));
+        Path tmp = dir.resolve(file.getFileName() + ".tmp");
+        Files.write(tmp, buf.array());
+        try {
+            Files.move(tmp, file, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING);
+        }
+
+        generation++;
+        lastSeq = seq;
+        latest = new Snapshot(epoch, seq, state);
+
+        List<Path> files = list();
+        for (int i = 0; i < files.size() - KEEP; i++) Files.deleteIfExists(files.get(i));
+    }
+
+    /**
+     * @return The newest readable snapshot, or null if there is none.
+     */
+    public synchronized Snapshot latest() {
+        load();
+        return latest;
+    }
+
+    /**
+     * Deletes every snapshot, for when sequence numbering restarts.
+     */
+    public synchronized void clear() {
+        load();
+        try {
+            for (Path file : list()) Files.deleteIfExists(file);
+        } catch (IOException e) {
+            printError("[Snapshot] Could not clear " + dir + ": " + e.getMessage());
+        }
+        latest = null;
+        lastSeq = 0;
+    }
+
+    /**
+     * Reads the newest valid snapshot on first use.
+     */
+    private void load() {
+        if (generation >= 0) return;
+        generation = 0;
+        if (!Files.isDirectory(dir)) return;
+
+        try {
+            List<Path> files = list();
+            for (int i = files.size() - 1; i >= 0 && latest == null; i--) {
+                latest = read(files.get(i));
+            }
+            if (!files.isEmpty()) {
+                String name = files.get(files.size() - 1).getFileName().toString();
+                generation = Long.parseLong(name.substring(0, name.length() - SUFFIX.length()));
+            }
+        } catch (IOException | NumberFormatException e) {
+            printError("[Snapshot] Could not read " + dir + ": " + e.getMessage());
+        }
+        if (latest != null) lastSeq = latest.seq;
+    }
+
+    private static Snapshot read(Path file) throws IOException {
+        byte[] data = Files.readAllBytes(file);
+        if (data.length < HEADER + 4) return null;
+
+        ByteBuffer buf = ByteBuffer.wrap(data);
+        if (buf.getInt() != MAGIC || buf.get() != FORMAT_VERSION) return null;
+        buf.getLong();
+        long epoch = buf.getLong();
+        long seq = buf.getLong();
+        int length = buf.getInt();
+        if (length < 0 || length != data.length - HEADER - 4) return null;
+
+        CRC32C crc = new CRC32C();
+        crc.update(data, 0, HEADER + length);
+        if (buf.getInt(HEADER + length) != (int) crc.getValue()) {
+            printError("[Snapshot] " + file.getFileName() + " is corrupt. Skipping.");
+            return null;
+        }
+        return new Snapshot(epoch, seq, new String(data, HEADER, length, StandardCharsets.UTF_8));
+    }
+
+    /**
+     * @return The snapshot files, oldest first.
+     */
+    private List<Path> list() throws IOException {
+        List<Path> files = new ArrayList<>();
+        if (!Files.isDirectory(dir)) return files;
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(dir, "*" + SUFFIX)) {
+            for (Path file : stream) files.add(file);
+        }
+        files.sort(null);
+        return files;
+    }
+}
@@ -0,0 +1,67 @@
+package game;
+
+import networking.NetworkConfig;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import static util.ConsolePrint.printNetworking;
+
+/**
+ * Brings a node into the cluster as soon as the network allows.
+ * TCP and UDP are set up in parallel; discovery starts the moment TCP is listening, since peers answer a
+ * JOIN_REQUEST by connecting to us, and is repeated quickly in case the first multicast is lost.
+ * The first election then starts on the membership change that completes the quorum (see ElectionManager.startStabilizationPeriod).
+ */
+public class ClusterBootstrap {
+    private static final int JOIN_ATTEMPTS = 5;
+    private static final long FIRST_JOIN_RETRY_MS = 100;
+
+    private final NodeContext node;
+    private final ScheduledExecutorService timer = Executors.newSingleThreadScheduledExecutor();
+
+    public ClusterBootstrap(NodeContext node) {
+        this.node = node;
+    }
+
+    /**
+     * Starts the transports and discovery, and returns once both transports are up.
+     */
+    public void run() {
+        long start = System.nanoTime();
+
+        CompletableFuture<Void> tcpUp = CompletableFuture.runAsync(node.tcp::start);
+        CompletableFuture<Void> udpUp = CompletableFuture.runAsync(node.udp::start);
+        tcpUp.thenRun(() -> announce(0));
+
+        CompletableFuture.allOf(tcpUp, udpUp).join();
+        printNetworking("[Bootstrap] Transports up in " + (System.nanoTime() - start) / 1_000_000 + "ms.");
+
+        node.election.startStabilizationPeriod();
+    }
+
+    /**
+     * Multicasts a JOIN_REQUEST, then again after 100, 200, 400... ms until the quorum is connected or a leader is known.
+     * After the last attempt the heartbeat loop keeps asking while the node has no peers.
+     */
+    private void announce(int attempt) {
+        if (attempt > 0 && joined()) {
+            timer.shutdown();
+            return;
+        }
+
+        node.udp.multicastJoinRequest();
+        if (attempt + 1 < JOIN_ATTEMPTS) {
+            timer.schedule(() -> announce(attempt + 1), FIRST_JOIN_RETRY_MS << attempt, TimeUnit.MILLISECONDS);
+        } else {
+            timer.shutdown();
+        }
+    }
+
+    private boolean joined() {
+        return node.election.currentLeaderId != null
+            || node.tcp.getConnectedPeerIds().size() >= NetworkConfig.BOOTSTRAP_QUORUM;
+    }
+}
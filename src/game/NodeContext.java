@@ -1,14 +1,20 @@
 package game;
 
 import consensus.ElectionManager;
+import consensus.HandoverState;
 import consensus.HoldBackQueue;
+import consensus.SequenceLog;
+import consensus.SnapshotStore;
 import consensus.Sequencer;
 import networking.TcpMeshManager;
 import networking.UdpMulticastManager;
 import networking.GameMessage;
 import networking.NetworkConfig;
 
+import java.io.IOException;
+
 import static util.ConsolePrint.printError;
+import static util.ConsolePrint.printNormal;
 import static util.ConsolePrint.togglePrintSuppress;
 
 /**
@@ -27,6 +33,9 @@ public class NodeContext {
     public final Sequencer sequencer;
     public final HoldBackQueue queue;
     public final ClientGameState clientGame;
+    // Null when snapshots are disabled
+    public final SnapshotStore snapshots;
+    public final StandbyReplica standby;
     
     // Set to private because we only want to create it in a specific way
     private TexasHoldem serverGame;
@@ -41,18 +50,25 @@ public class NodeContext {
         this.udp = new UdpMulticastManager(this);
         
         this.election = new ElectionManager(this, tcp);
-        this.sequencer = new Sequencer(udp, tcp);
+        this.snapshots = SnapshotStore.forNode(myId);
+        SequenceLog log = SequenceLog.forNode(myId);
+        this.sequencer = new Sequencer(udp, tcp, log, snapshots);
+        if (log != null) {
+            // The log only serves this process's current term, so it does not outlive it
+            Runtime.getRuntime().addShutdownHook(new Thread(log::delete));
+        }
+        this.standby = new StandbyReplica(this);
+
+        resumeFromSnapshot();
 
         queue.setQueueAttributes(tcp, clientGame, this::handleQueueDelivery);
     }
 
     /**
-     * Starts the node by initializing the TCP and UDP managers, starting the election stabilization period, and handling user commands.
+     * Starts the node by bootstrapping the TCP and UDP managers and the election stabilization period, then handles user commands.
      */
     public void start() {
-        tcp.start();
-        udp.start();
-        election.startStabilizationPeriod();
+        new ClusterBootstrap(this).run();
         ClientGameState.handleUserCommands(this);
     }
 
@@ -70,7 +86,10 @@ public class NodeContext {
                 break;
                 
             case NACK:
-                sequencer.handleNack(msg, msg.getSenderId());
+                if (sequencer.handleNack(msg, msg.getSenderId()) == Sequencer.NackResult.TOO_OLD
+                        && election.iAmLeader && serverGame != null) {
+                    serverGame.resyncPlayer(msg.getSenderId());
+                }
                 break;
 
             case ELECTION:
@@ -81,14 +100,19 @@ public class NodeContext {
             case COORDINATOR:
                 election.currentLeaderId = msg.getSenderId();
                 queue.setLeaderId(msg.getSenderId());
+                if (msg.payload != null) {
+                    long[] start = parseEpochSeq(msg.payload);
+                    queue.beginEpoch(start[0], start[1]);
+                }
                 election.handleMessage(msg);
 
             case ORDERED_MULTICAST:
+            case HANDOVER:
             case PLAYER_ACTION:
             case GAME_INFO:
             case COMMUNITY_CARDS:
             case SHOWDOWN:
-                if (!msg.getSenderId().equals(election.currentLeaderId)) break;
+                if (!acceptsFromSender(msg)) break;
 
                 if (dropNext) {
                     printError("[Context] Simulating omission. Dropped Msg #" + msg.sequenceNumber);
@@ -99,6 +123,9 @@ public class NodeContext {
                 if (msg.sequenceNumber <= 0) {
                     if (msg.type == GameMessage.Type.GAME_INFO) {
                          clientGame.onReceiveInfo(msg.payload);
+                    } else if (msg.type == GameMessage.Type.HANDOVER) {
+                        // Sent only to the next dealer, straight from the outgoing one
+                        onHandover(msg);
                     }
                 } else {
                     queue.addMessage(msg);
@@ -106,13 +133,24 @@ public class NodeContext {
                 break;
 
             case GAME_STATE:
-                if (!msg.getSenderId().equals(election.currentLeaderId)) break;
-                queue.addMessage(msg);
+                if (!acceptsFromSender(msg)) break;
+
+                // Unsequenced states are private state transfers that follow a SYNC
+                if (msg.sequenceNumber <= 0) {
+                    clientGame.onReceiveState(msg.payload);
+                } else {
+                    queue.addMessage(msg);
+                }
                 break;
 
             case SYNC:
                 if (!msg.getSenderId().equals(election.currentLeaderId)) break;
-                queue.forceSync(Long.parseLong(msg.payload));
+                if (msg.payload.indexOf(':') < 0) {
+                    queue.forceSync(Long.parseLong(msg.payload));
+                } else {
+                    long[] point = parseEpochSeq(msg.payload);
+                    queue.forceSync(point[0], point[1]);
+                }
                 break;
 
             case YOUR_HAND:
@@ -131,18 +169,77 @@ public class NodeContext {
         }
     }
 
+    /**
+     * Ordered traffic is taken from the current leader, and sequenced messages of an earlier epoch from anyone:
+     * the previous leader's messages still in flight after the COORDINATOR, or repairs the new leader resends
+     * from the window it inherited, which still carry the previous leader as sender.
+     * The queue keeps only those below the point where the current epoch started.
+     */
+    private boolean acceptsFromSender(GameMessage msg) {
+        if (msg.getSenderId().equals(election.currentLeaderId)) return true;
+        return msg.sequenceNumber > 0 && msg.epoch < queue.getEpoch();
+    }
+
+    private void onHandover(GameMessage msg) {
+        try {
+            election.acceptHandover(HandoverState.decode(msg.payload));
+        } catch (IOException e) {
+            printError("[Context] Ignoring handover from " + msg.getSenderId() + ": " + e.getMessage());
+        }
+    }
+
+    /**
+     * Parses the "epoch:seq" carried by COORDINATOR and SYNC.
+     * @param payload The payload.
+     * @return {epoch, seq}.
+     */
+    private static long[] parseEpochSeq(String payload) {
+        int colon = payload.indexOf(':');
+        return new long[] {Long.parseLong(payload.substring(0, colon)), Long.parseLong(payload.substring(colon + 1))};
+    }
+
     /**
      * Handles the delivery of messages from the holdback queue to the application layer.
-     * Specifically processes PLAYER_ACTION messages if the node is the leader.
+     * Specifically processes PLAYER_ACTION messages if the node is the leader, and rotates the dealer on HANDOVER.
+     * Every delivery also feeds the standby shadow.
      * This method is passed to the HoldBackQueue for callback upon message delivery to keep pipes dumb.
      * @param msg The GameMessage being delivered.
      */
     private void handleQueueDelivery(GameMessage msg) {
+        standby.onDelivered(msg);
+
+        if (msg.type == GameMessage.Type.HANDOVER) {
+            election.onScheduledRotation(msg.getSenderId(), Integer.parseInt(msg.payload));
+            return;
+        }
+
+        if (snapshots != null && msg.type == GameMessage.Type.GAME_STATE) {
+            snapshots.offer(msg.epoch, msg.sequenceNumber, msg.payload);
+        }
+
         if (election.iAmLeader && serverGame != null && msg.type == GameMessage.Type.PLAYER_ACTION) {
             serverGame.processAction(msg.payload);
         }
     }
 
+    /**
+     * Restores the table from the last snapshot this node saved, so a node restarted with the same ID
+     * picks up where it left off instead of starting from an empty table. The ID includes the port,
+     * so this needs a fixed port in network.config.
+     * The queue continues after the snapshot in the snapshot's epoch, so only the messages sequenced since then are NACKed,
+     * and messages of an epoch that superseded it are held until that epoch is announced.
+     */
+    private void resumeFromSnapshot() {
+        if (snapshots == null) return;
+
+        SnapshotStore.Snapshot snap = snapshots.latest();
+        if (snap == null) return;
+
+        printNormal("[Context] Resuming from the snapshot taken at #" + snap.seq + " in epoch " + snap.epoch);
+        clientGame.onReceiveState(snap.state);
+        queue.forceSync(snap.epoch, snap.seq);
+    }
+
     /**
      * Handles the event of a peer connecting to the node.
      * If the node is the leader, it adds the new player to the server game.
@@ -175,6 +272,20 @@ public class NodeContext {
         }
     }
 
+    /**
+     * Handles a peer that could not be reached at all, so it never had a connection to close.
+     * It is failed like a disconnected peer: a dealer that cannot be reached is replaced, and a player is folded out.
+     * @param peerId The ID of the unreachable peer.
+     */
+    public void onPeerUnreachable(String peerId) {
+        printError("[Context] Peer " + peerId + " is unreachable");
+        election.handleNodeFailure(peerId);
+
+        if (election.iAmLeader && serverGame != null) {
+            serverGame.handlePlayerCrash(peerId);
+        }
+    }
+
     public TexasHoldem getServerGame() { return serverGame; }
 
     /**
@@ -199,6 +310,23 @@ public class NodeContext {
         this.serverGame = new TexasHoldem(this, loadedTable);
     }
 
+    /**
+     * Creates the server game from the table the outgoing dealer handed over directly.
+     * The table is already authoritative, so it is not multicast again and no player needs a resync.
+     * @param state The handover received from the outgoing dealer.
+     */
+    public void createServerGame(HandoverState state) {
+        this.serverGame = new TexasHoldem(this, PokerTable.deserializeState(state.table), false);
+    }
+
+    /**
+     * Creates the server game from this node's standby shadow, resuming the hand the crashed dealer was running.
+     * @param replica This node's standby replica.
+     */
+    public void createServerGame(StandbyReplica replica) {
+        this.serverGame = replica.promote();
+    }
+
     /**
      * Destroys the current server game instance.
      * This method is called when the node is no longer the leader before handover or wants to reset the game state.
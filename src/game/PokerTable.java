@@ -35,6 +35,9 @@ public class PokerTable implements Serializable {
 
     public int roundNumber = 0;
 
+    // Part of the table so a standby that resumes from it knows whether a hand was being played
+    public boolean handInProgress = false;
+
     public PokerTable() {
         this.deck = new Deck();
     }
@@ -0,0 +1,89 @@
+package game;
+
+import networking.GameMessage;
+import networking.Peer;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Hot standby for the dealer. The node next in the rotation keeps a shadow of the dealer from the ordered stream,
+ * so when the dealer crashes it takes over at once instead of waiting for an election and rebuilding from a stale table.
+ * The shadow is the last sequenced table state plus the actions sequenced after it; the messages themselves are
+ * replicated into this node's Sequencer history, so after taking over it can still repair followers' gaps.
+ */
+public class StandbyReplica {
+    private final NodeContext node;
+
+    private String standbyId;
+    private String lastState;
+    private final List<String> actionsSinceState = new ArrayList<>();
+
+    public StandbyReplica(NodeContext node) {
+        this.node = node;
+    }
+
+    /**
+     * The standby is whoever the schedule would make dealer after the current one, so it is the node that
+     * takes the table next anyway, and every node agrees on it from the same sequenced table.
+     * @param table A sequenced table state.
+     * @param leaderId The dealer that sequenced it.
+     * @return The standby's ID, or null if there is nobody besides the dealer.
+     */
+    public static String standbyFor(PokerTable table, String leaderId) {
+        Set<String> members = new HashSet<>();
+        for (Player p : table.players) members.add(p.id);
+        members.add(leaderId);
+
+        String standby = Peer.getScheduledLeader(members, leaderId, table.roundNumber + 1);
+        return standby.equals(leaderId) ? null : standby;
+    }
+
+    /**
+     * Feeds a delivered message into the shadow. Runs on the delivery thread, after the client view has been updated.
+     * @param msg The delivered message.
+     */
+    public synchronized void onDelivered(GameMessage msg) {
+        if (msg.type == GameMessage.Type.GAME_STATE) {
+            standbyId = standbyFor(node.clientGame.table, msg.getSenderId());
+            lastState = msg.payload;
+            actionsSinceState.clear();
+        } else if (msg.type == GameMessage.Type.PLAYER_ACTION && lastState != null) {
+            actionsSinceState.add(msg.payload);
+        }
+
+        if (isStandby()) node.sequencer.replicate(msg);
+    }
+
+    public synchronized boolean isStandby() {
+        return node.myId.equals(standbyId);
+    }
+
+    /**
+     * @return The current dealer's standby, or null if none is known yet.
+     */
+    public synchronized String getStandbyId() {
+        return standbyId;
+    }
+
+    /**
+     * Turns the shadow into this node's server game, resuming the crashed dealer's hand.
+     * @return The resumed game.
+     */
+    TexasHoldem promote() {
+        PokerTable table;
+        List<String> replay;
+        synchronized (this) {
+            table = lastState != null ? PokerTable.deserializeState(lastState) : node.clientGame.table;
+            replay = new ArrayList<>(actionsSinceState);
+
+            standbyId = null;
+            lastState = null;
+            actionsSinceState.clear();
+        }
+        // Outside the lock: resuming multicasts, and this node's own deliveries must not wait on it
+        return new TexasHoldem(node, table, replay);
+    }
+}
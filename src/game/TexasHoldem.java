@@ -1,12 +1,17 @@
 package game;
 
+import consensus.HandoverState;
 import networking.GameMessage;
+import networking.NetworkConfig;
+import networking.Peer;
 
 import static util.ConsolePrint.printError;
 import static util.ConsolePrint.printGame;
 import static util.ConsolePrint.printNormal;
 
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.ScheduledFuture;
@@ -23,8 +28,11 @@ public class TexasHoldem {
 
     private ScheduledExecutorService turnTimer = Executors.newSingleThreadScheduledExecutor();
     private ScheduledFuture<?> currentTimerTask;
-    private boolean gameInProgress = false;
     private int currentTurnToken = 0;
+
+    // While a standby replays the crashed dealer's actions: the table is updated but nothing is sent and nobody waits
+    private boolean replaying = false;
+    private boolean handEndedInReplay = false;
     
     public enum Phase { PREFLOP, FLOP, TURN, RIVER, SHOWDOWN }
 
@@ -35,19 +43,28 @@ public class TexasHoldem {
     /**
      * Initializes the Texas Hold'em game with a given node context and loaded table state.
      * Removes self from player list if present (since the new leader shouldn't be a player), 
-     * reconciles player roster with connected peers, and forces a state sync to ensure consistency.
+     * reconciles player roster with connected peers, and multicasts the resulting state.
+     * Sequencing continues in the epoch opened by the election, so players already at the table need no resync.
      * @param node The NodeContext of this node.
      * @param loadedTable The PokerTable state to load.
      */
     public TexasHoldem(NodeContext node, PokerTable loadedTable) {
+        this(node, loadedTable, true);
+    }
+
+    /**
+     * @param announce False when the table was handed over by the outgoing dealer and the players already hold it;
+     *                 the dealer leaving the table then goes out with the next state multicast.
+     */
+    public TexasHoldem(NodeContext node, PokerTable loadedTable, boolean announce) {
         this.node = node;
         this.table = loadedTable;
         this.table.resetDeck();
-        node.sequencer.resetSeqId();
+        this.table.handInProgress = false;
 
         printGame("[Game] Reconciling player roster");
         for (String peerId : node.tcp.getConnectedPeerIds()) {
-            addPlayer(peerId);
+            if (table.players.stream().noneMatch(p -> p.id.equals(peerId))) addPlayer(peerId);
         }
         
         for (Player player : table.players) {
@@ -68,11 +85,66 @@ public class TexasHoldem {
 
         printGame("[Game] I (Node " + node.myId + ") am now Dealer. Leaving the table.");
 
-        multicastState();
-        node.queue.forceSync(node.sequencer.getCurrentSeqId());
+        if (announce) multicastState();
         printNormal("Game State Loaded. Type 'start' to begin next hand");
     }
 
+    /**
+     * Resumes the hand a crashed dealer was running, as its standby.
+     * The table is the last state the dealer sequenced, and the actions sequenced after it are applied again quietly,
+     * so the hand carries on exactly where the dealer stopped; the result goes out as one state and one turn prompt.
+     * The standby then leaves the table like any new dealer, folding its own hand if it was still in it.
+     * @param node The NodeContext of this node.
+     * @param shadowTable The last table state the crashed dealer sequenced.
+     * @param actionsSinceState The PLAYER_ACTION payloads sequenced after that state, in order.
+     */
+    TexasHoldem(NodeContext node, PokerTable shadowTable, List<String> actionsSinceState) {
+        this.node = node;
+        this.table = shadowTable;
+
+        printGame("[Game] Resuming round " + table.roundNumber + " as the dealer's standby (" + actionsSinceState.size() + " action(s) to replay).");
+        replaying = true;
+        for (String action : actionsSinceState) processAction(action);
+        replaying = false;
+
+        if (handEndedInReplay) {
+            passLeadership();
+            return;
+        }
+
+        Player me = table.players.stream().filter(p -> p.id.equals(node.myId)).findFirst().orElse(null);
+        if (!table.handInProgress) {
+            if (me != null) {
+                me.isActive = false;
+                me.folded = true;
+            }
+            printGame("[Game] I (Node " + node.myId + ") am now Dealer. Leaving the table.");
+            multicastState();
+            return;
+        }
+
+        if (me != null && !me.folded) {
+            printGame("[Game] I (Node " + node.myId + ") am now Dealer. Folding my hand.");
+            if (table.players.indexOf(me) == table.currentPlayerIndex) {
+                processAction("fold");
+                me.isActive = false;
+                return;
+            }
+
+            me.folded = true;
+            multicastInfo("Player " + me.id + " takes over as Dealer and folds.");
+            if (table.players.stream().filter(p -> !p.folded).count() < 2) {
+                me.isActive = false;
+                endRoundByFold();
+                return;
+            }
+        }
+        if (me != null) me.isActive = false;
+
+        // The crashed dealer's last prompt may never have been answered
+        notifyTurn();
+    }
+
     /**
      * Adds a new player to the poker table.
      * If the game is in progress, the new player is marked as a spectator.
@@ -82,14 +154,16 @@ public class TexasHoldem {
     public void addPlayer(String playerId) {
         if (playerId.equals(node.myId)) return;
         
-        sendPrivateMessage(GameMessage.Type.SYNC, playerId, String.valueOf(node.sequencer.getCurrentSeqId()));
+        if (!node.sequencer.sendCatchUp(playerId)) {
+            sendPrivateMessage(GameMessage.Type.SYNC, playerId, node.sequencer.getSyncPoint());
+        }
         multicastState();
         
         if (table.players.stream().anyMatch(p -> p.id.equals(playerId))) return;
 
         Player newPlayer = new Player(playerId, 1000);
         
-        if (gameInProgress) {
+        if (table.handInProgress) {
             newPlayer.isActive = false;
             newPlayer.folded = true;
             sendStateDump(playerId);
@@ -113,7 +187,7 @@ public class TexasHoldem {
             return;
         }
         
-        gameInProgress = true;
+        table.handInProgress = true;
         
         table.resetDeck();
         table.currentPlayerIndex = (table.dealerIndex + 1) % table.players.size();
@@ -138,6 +212,20 @@ public class TexasHoldem {
         notifyTurn();
     }
 
+    /**
+     * Brings a player that fell too far behind for retransmission back in step:
+     * replays the latest snapshot and the log after it, or if that is not possible,
+     * skips its queue to the current sequence number and sends it the current table state directly.
+     * @param playerId The ID of the player to resync.
+     */
+    public void resyncPlayer(String playerId) {
+        printGame("[Game] Player " + playerId + " is too far behind. Sending a state transfer.");
+        if (node.sequencer.sendCatchUp(playerId)) return;
+
+        sendPrivateMessage(GameMessage.Type.SYNC, playerId, node.sequencer.getSyncPoint());
+        sendPrivateMessage(GameMessage.Type.GAME_STATE, playerId, PokerTable.getSerializedState(table));
+    }
+
     /**
      * Sends a dump of the current game state to a specific player.
      * @param targetId The ID of the target player.
@@ -157,6 +245,7 @@ public class TexasHoldem {
      * to ensure the message is received after any state updates.
      */
     private void notifyTurn() {
+        if (replaying) return;
         multicastState();
         Player next = table.players.get(table.currentPlayerIndex);
         multicastInfo("Pot: " + table.pot + " | Turn: Player " + next.id + " (To Call: " + (table.currentHighestBet - next.currentBet) + ")");
@@ -171,7 +260,7 @@ public class TexasHoldem {
      * @param msg The GameMessage containing the player's action request.
      */
     public void handleClientRequest(GameMessage msg) {
-        if (!gameInProgress) {
+        if (!table.handInProgress) {
             sendPrivateState(msg.getSenderId(), "Game not started.");
             return;
         }
@@ -194,7 +283,7 @@ public class TexasHoldem {
      * @param command The action command string.
      */
     public void processAction(String command) {
-        if (!gameInProgress) return;
+        if (!table.handInProgress) return;
 
         Player current = table.players.get(table.currentPlayerIndex);
 
@@ -372,7 +461,9 @@ public class TexasHoldem {
             default: break;
         }
         
-        if (skipBetting) {
+        if (skipBetting && replaying) {
+            advancePhase();
+        } else if (skipBetting) {
             multicastInfo("All players all-in (or only one active). Running it out");
             
             new Thread(() -> {
@@ -396,7 +487,7 @@ public class TexasHoldem {
             communityCards.append(c.toString()).append(",");
         }
         
-        node.sequencer.multicastAction(new GameMessage(GameMessage.Type.COMMUNITY_CARDS, communityCards.toString()));
+        multicast(new GameMessage(GameMessage.Type.COMMUNITY_CARDS, communityCards.toString()));
     }
 
     /**
@@ -433,7 +524,7 @@ public class TexasHoldem {
             winner.chips += table.pot;
             for (Player p : table.players) p.totalBet = 0;
             summary.append("\n").append("Winner: " + winner.name + " with " + winHandDescription + "! Pot: " + table.pot);
-            node.sequencer.multicastAction(new GameMessage(GameMessage.Type.SHOWDOWN, summary.toString()));
+            multicast(new GameMessage(GameMessage.Type.SHOWDOWN, summary.toString()));
         }
 
         table.resetDeck();
@@ -447,7 +538,7 @@ public class TexasHoldem {
      * @param playerId The ID of the crashed player.
      */
     public void handlePlayerCrash(String playerId) {
-        if (!gameInProgress) {
+        if (!table.handInProgress) {
             printError("[Game] Removing Player " + playerId + " from table due to disconnection");
             table.removePlayer(playerId);
             return;
@@ -490,7 +581,7 @@ public class TexasHoldem {
         if (winner != null) {
             winner.chips += table.pot;
             for (Player p : table.players) p.totalBet = 0;
-            node.sequencer.multicastAction(new GameMessage(GameMessage.Type.SHOWDOWN, "Round Over. Everyone folded. " + winner.name + " wins " + table.pot));
+            multicast(new GameMessage(GameMessage.Type.SHOWDOWN, "Round Over. Everyone folded. " + winner.name + " wins " + table.pot));
         }
 
         table.resetDeck();
@@ -498,10 +589,17 @@ public class TexasHoldem {
     }
 
     /**
-     * Passes leadership to the next node by serializing the current game state
-     * and sending it to the next leader. Destroys the server game instance afterwards.
+     * Passes leadership to the next node by multicasting the final game state followed by a sequenced HANDOVER,
+     * from which every node derives the next dealer (see ElectionManager.onScheduledRotation).
+     * The next dealer also gets the table and recent messages directly, so it can take over at once.
+     * With leader.rotation=election the dealer instead steps down after a pause and a Bully election picks the next one.
      */
     private void passLeadership() {
+        if (replaying) {
+            // Rotated once the replay is over, so the handover goes out after the resumed state
+            handEndedInReplay = true;
+            return;
+        }
         printGame("[Game] Hand finished.");
 
         for (Player player : table.players) {
@@ -512,19 +610,55 @@ public class TexasHoldem {
         }
 
         table.roundNumber += 1;
+        table.handInProgress = false;
         
         multicastState();
         
         printGame("[Game] Rotating dealer.");
-        new Thread(() -> {
-            try { Thread.sleep(2000); } catch (Exception e) {}
-            // this one line can handle a leader coming back from a hang
-            if (table.players.stream().filter(p -> !p.id.equals(node.myId)).count() < 1) {node.resetAll(true); return;}
-            node.election.passLeadership(); 
-            node.destroyServerGame();
-        }).start();
-        
-        gameInProgress = false;
+        if ("schedule".equals(NetworkConfig.LEADER_ROTATION)
+                && table.players.stream().anyMatch(p -> !p.id.equals(node.myId))) {
+            // Sequenced behind the final state, so every node picks the next dealer from the same table
+            String successor = nextDealer();
+            String finalTable = PokerTable.getSerializedState(table);
+            node.sequencer.multicastSequenced(new GameMessage(GameMessage.Type.HANDOVER, String.valueOf(table.roundNumber)))
+                .thenAccept(marker -> handOverTo(successor, finalTable, marker));
+        } else {
+            new Thread(() -> {
+                try { Thread.sleep(2000); } catch (Exception e) {}
+                // this one line can handle a leader coming back from a hang
+                if (table.players.stream().filter(p -> !p.id.equals(node.myId)).count() < 1) {node.resetAll(true); return;}
+                node.election.passLeadership(); 
+                node.destroyServerGame();
+            }).start();
+        }
+    }
+
+    /**
+     * @return The dealer of the next round, by the same schedule every node applies to the HANDOVER.
+     */
+    private String nextDealer() {
+        Set<String> members = new HashSet<>();
+        for (Player p : table.players) members.add(p.id);
+        members.add(node.myId);
+        return Peer.getScheduledLeader(members, node.myId, table.roundNumber);
+    }
+
+    /**
+     * Sends the next dealer this table, where the sequence stopped and the recent messages, straight over TCP,
+     * so it starts dealing from the authoritative state instead of waiting for the multicast stream to reach it.
+     * The handover ends at the HANDOVER marker's own number; reading the sequencer's position instead could miss
+     * the marker if another thread was still sending it when multicastAction returned.
+     * @param successor The next dealer.
+     * @param finalTable The serialized table the hand ended with.
+     * @param marker The sequenced HANDOVER marker.
+     */
+    private void handOverTo(String successor, String finalTable, GameMessage marker) {
+        if (successor.equals(node.myId)) return;
+
+        HandoverState state = new HandoverState(Integer.parseInt(marker.payload), marker.epoch, marker.sequenceNumber,
+            finalTable, node.sequencer.exportWindow(marker.sequenceNumber, NetworkConfig.LEADER_HANDOVER_WINDOW));
+        printGame("[Game] Handing the table to " + successor + " at #" + state.lastSeq + ".");
+        node.tcp.sendToPeer(successor, new GameMessage(GameMessage.Type.HANDOVER, state.encode()));
     }
 
     /**
@@ -533,7 +667,7 @@ public class TexasHoldem {
     private void multicastState() {
         printGame("[Game] Sending updated table state to all players.");
         String stateData = PokerTable.getSerializedState(table);
-        node.sequencer.multicastAction(new GameMessage(GameMessage.Type.GAME_STATE, stateData));
+        multicast(new GameMessage(GameMessage.Type.GAME_STATE, stateData));
     }
 
     public void startTurnTimer(int playerIndex) {
@@ -558,7 +692,15 @@ public class TexasHoldem {
     }
 
     private void multicastInfo(String msg) {
-        node.sequencer.multicastAction(new GameMessage(GameMessage.Type.GAME_INFO, msg));
+        multicast(new GameMessage(GameMessage.Type.GAME_INFO, msg));
+    }
+
+    /**
+     * Sequences a message from the game, unless a standby is replaying actions the crashed dealer already announced.
+     */
+    private void multicast(GameMessage msg) {
+        if (replaying) return;
+        node.sequencer.multicastAction(msg);
     }
     
     private void sendPrivateState(String targetId, String msg) {
@@ -566,6 +708,7 @@ public class TexasHoldem {
     }
     
     private void sendPrivateMessage(GameMessage.Type type, String targetId, String msg) {
+        if (replaying) return;
         node.tcp.sendToPeer(targetId, new GameMessage(type, msg));
     }
 }
\ No newline at end of file
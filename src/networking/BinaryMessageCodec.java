@@ -0,0 +1,195 @@
+package networking;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Compact, versioned binary encoding of a GameMessage.
+ *
+ * Layout:
+ * - version (1 byte)
+ * - type ordinal (1 byte)
+ * - flags (1 byte): payload present, sender IP is an IPv4 literal, sender IP missing, epoch present
+ * - sender IP: 4 raw bytes for IPv4, otherwise varint length + UTF-8
+ * - sender port (2 bytes)
+ * - sequence number (zig-zag varint, since unsequenced messages carry -1)
+ * - epoch (varint), if tagged
+ * - payload: varint length + UTF-8 bytes, if present
+ *
+ * TCP frames add their own length prefix; a UDP datagram holds exactly one encoded message.
+ */
+public class BinaryMessageCodec implements MessageCodec {
+    public static final byte VERSION = 1;
+
+    private static final int FLAG_PAYLOAD = 1;
+    private static final int FLAG_IPV4 = 1 << 1;
+    private static final int FLAG_NO_IP = 1 << 2;
+    private static final int FLAG_EPOCH = 1 << 3;
+
+    private static final GameMessage.Type[] TYPES = GameMessage.Type.values();
+
+    @Override
+    public byte[] encode(GameMessage msg) {
+        byte[] ip = null;
+        byte[] payload = msg.payload != null ? msg.payload.getBytes(StandardCharsets.UTF_8) : null;
+        int[] ipv4 = parseIpv4(msg.senderIp);
+
+        int flags = 0;
+        if (payload != null) flags |= FLAG_PAYLOAD;
+        if (msg.epoch != 0) flags |= FLAG_EPOCH;
+        if (msg.senderIp == null) flags |= FLAG_NO_IP;
+        else if (ipv4 != null) flags |= FLAG_IPV4;
+        else ip = msg.senderIp.getBytes(StandardCharsets.UTF_8);
+
+        Writer out = new Writer(16 + (payload != null ? payload.length + 5 : 0) + (ip != null ? ip.length + 5 : 0));
+        out.put(VERSION);
+        out.put(msg.type.ordinal());
+        out.put(flags);
+
+        if (ipv4 != null) {
+            for (int octet : ipv4) out.put(octet);
+        } else if (ip != null) {
+            out.putVarint(ip.length);
+            out.put(ip);
+        }
+
+        out.put(msg.senderPort >>> 8);
+        out.put(msg.senderPort);
+        out.putVarint((msg.sequenceNumber << 1) ^ (msg.sequenceNumber >> 63));
+        if (msg.epoch != 0) out.putVarint(msg.epoch);
+
+        if (payload != null) {
+            out.putVarint(payload.length);
+            out.put(payload);
+        }
+
+        return out.toByteArray();
+    }
+
+    @Override
+    public GameMessage decode(byte[] data, int offset, int length) throws IOException {
+        Reader in = new Reader(data, offset, length);
+
+        int version = in.get();
+        if (version != VERSION) throw new IOException("Unsupported wire version " + version);
+
+        int typeIdx = in.get();
+        if (typeIdx >= TYPES.length) throw new IOException("Unknown message type " + typeIdx);
+
+        int flags = in.get();
+
+        String senderIp = null;
+        if ((flags & FLAG_IPV4) != 0) {
+            senderIp = in.get() + "." + in.get() + "." + in.get() + "." + in.get();
+        } else if ((flags & FLAG_NO_IP) == 0) {
+            senderIp = in.getString((int) in.getVarint());
+        }
+
+        int senderPort = (in.get() << 8) | in.get();
+        long zigzag = in.getVarint();
+        long seq = (zigzag >>> 1) ^ -(zigzag & 1);
+        long epoch = (flags & FLAG_EPOCH) != 0 ? in.getVarint() : 0;
+
+        String payload = null;
+        if ((flags & FLAG_PAYLOAD) != 0) {
+            payload = in.getString((int) in.getVarint());
+        }
+
+        GameMessage msg = new GameMessage(TYPES[typeIdx], payload, seq);
+        msg.senderIp = senderIp;
+        msg.senderPort = senderPort;
+        msg.epoch = epoch;
+        return msg;
+    }
+
+    private static int[] parseIpv4(String ip) {
+        if (ip == null) return null;
+        String[] parts = ip.split("\\.", -1);
+        if (parts.length != 4) return null;
+
+        int[] octets = new int[4];
+        for (int i = 0; i < 4; i++) {
+            String part = parts[i];
+            if (part.isEmpty() || part.length() > 3) return null;
+            for (int c = 0; c < part.length(); c++) {
+                if (!Character.isDigit(part.charAt(c))) return null;
+            }
+            octets[i] = Integer.parseInt(part);
+            if (octets[i] > 255) return null;
+            // Leading zeros would not survive the round trip
+            if (part.length() > 1 && part.charAt(0) == '0') return null;
+        }
+        return octets;
+    }
+
+    private static final class Writer {
+        private byte[] buf;
+        private int pos;
+
+        Writer(int capacity) {
+            this.buf = new byte[capacity];
+        }
+
+        void put(int b) {
+            ensure(1);
+            buf[pos++] = (byte) b;
+        }
+
+        void put(byte[] bytes) {
+            ensure(bytes.length);
+            System.arraycopy(bytes, 0, buf, pos, bytes.length);
+            pos += bytes.length;
+        }
+
+        void putVarint(long value) {
+            while ((value & ~0x7FL) != 0) {
+                put((int) ((value & 0x7F) | 0x80));
+                value >>>= 7;
+            }
+            put((int) value);
+        }
+
+        byte[] toByteArray() {
+            return pos == buf.length ? buf : Arrays.copyOf(buf, pos);
+        }
+
+        private void ensure(int extra) {
+            if (pos + extra > buf.length) buf = Arrays.copyOf(buf, Math.max(buf.length * 2, pos + extra));
+        }
+    }
+
+    private static final class Reader {
+        private final byte[] buf;
+        private final int end;
+        private int pos;
+
+        Reader(byte[] buf, int offset, int length) {
+            this.buf = buf;
+            this.pos = offset;
+            this.end = offset + length;
+        }
+
+        int get() throws IOException {
+            if (pos >= end) throw new IOException("Truncated message");
+            return buf[pos++] & 0xFF;
+        }
+
+        long getVarint() throws IOException {
+            long value = 0;
+            for (int shift = 0; shift < 64; shift += 7) {
+                int b = get();
+                value |= (long) (b & 0x7F) << shift;
+                if ((b & 0x80) == 0) return value;
+            }
+            throw new IOException("Malformed varint");
+        }
+
+        String getString(int length) throws IOException {
+            if (length < 0 || pos + length > end) throw new IOException("Truncated message");
+            String s = new String(buf, pos, length, StandardCharsets.UTF_8);
+            pos += length;
+            return s;
+        }
+    }
+}
@@ -0,0 +1,110 @@
+package networking;
+
+import java.net.SocketAddress;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Fixed-size ring of preallocated datagram slots handing packets from the single receive thread to consumer threads.
+ * The receive thread only copies bytes into the next slot; if that slot is still being processed the packet is dropped
+ * and counted, so the socket keeps being drained no matter how slow the consumers are.
+ */
+public class DatagramRing {
+    private final Slot[] slots;
+    private final Semaphore published = new Semaphore(0);
+    private final AtomicLong nextClaim = new AtomicLong(0);
+    private final AtomicLong released = new AtomicLong(0);
+    private final AtomicLong dropped = new AtomicLong(0);
+
+    // Only written by the receive thread
+    private long nextPublish = 0;
+
+    /**
+     * One datagram in the ring. Consumers read it between {@link #take()} and {@link #release(Slot)}.
+     */
+    public static final class Slot {
+        public byte[] data;
+        public int length;
+        public SocketAddress source;
+
+        private volatile long releasedSeq;
+
+        Slot(int bytes, long releasedSeq) {
+            this.data = new byte[bytes];
+            this.releasedSeq = releasedSeq;
+        }
+    }
+
+    /**
+     * @param capacity The number of slots.
+     * @param slotBytes The preallocated size of each slot; larger datagrams grow their slot once.
+     */
+    public DatagramRing(int capacity, int slotBytes) {
+        slots = new Slot[capacity];
+        for (int i = 0; i < capacity; i++) {
+            // Marks every slot as free for its first use
+            slots[i] = new Slot(slotBytes, i - capacity);
+        }
+    }
+
+    /**
+     * Copies a datagram into the next slot. Must only be called from the single receive thread.
+     * @return False if the ring was full and the datagram was dropped.
+     */
+    public boolean offer(byte[] data, int offset, int length, SocketAddress source) {
+        long seq = nextPublish;
+        Slot slot = slots[(int) (seq % slots.length)];
+
+        if (slot.releasedSeq != seq - slots.length) {
+            dropped.incrementAndGet();
+            return false;
+        }
+
+        if (slot.data.length < length) slot.data = new byte[length];
+        System.arraycopy(data, offset, slot.data, 0, length);
+        slot.length = length;
+        slot.source = source;
+
+        nextPublish = seq + 1;
+        published.release();
+        return true;
+    }
+
+    /**
+     * Waits for the next datagram. Each datagram is handed to exactly one consumer.
+     * @return The slot holding the datagram; it must be passed to {@link #release(Slot)} once read.
+     */
+    public Slot take() throws InterruptedException {
+        published.acquire();
+        long seq = nextClaim.getAndIncrement();
+        return slots[(int) (seq % slots.length)];
+    }
+
+    /**
+     * Returns a slot to the receive thread.
+     * @param slot A slot obtained from {@link #take()}.
+     */
+    public void release(Slot slot) {
+        slot.source = null;
+        slot.releasedSeq += slots.length;
+        released.incrementAndGet();
+    }
+
+    /**
+     * @return The number of datagrams received but not yet released by a consumer.
+     */
+    public int getOccupancy() {
+        return (int) (nextClaim.get() + published.availablePermits() - released.get());
+    }
+
+    /**
+     * @return The number of datagrams dropped because the ring was full.
+     */
+    public long getDroppedCount() {
+        return dropped.get();
+    }
+
+    public int getCapacity() {
+        return slots.length;
+    }
+}
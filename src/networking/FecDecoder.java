@@ -0,0 +1,120 @@
+package networking;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Rebuilds a single lost sequenced multicast unit from a parity packet built by {@link FecEncoder}.
+ * Recently received units are remembered, keyed by sender and first sequence number, until their group's parity arrives.
+ * Unless this node uses FEC itself, nothing is remembered until the first parity packet is seen,
+ * so senders without FEC cost receivers nothing.
+ * Units must be recorded before the parity packet that follows them is processed, i.e. one sender's packets in arrival order.
+ */
+public class FecDecoder {
+    private final Map<List<Object>, byte[]> units;
+    // Groups whose parity was already processed, so a duplicated parity packet rebuilds nothing
+    private final Map<List<Object>, Boolean> handled;
+    private volatile boolean active;
+
+    /**
+     * @param capacity The number of units to remember; the oldest are forgotten first.
+     */
+    public FecDecoder(int capacity) {
+        this(capacity, false);
+    }
+
+    /**
+     * @param capacity The number of units to remember; the oldest are forgotten first.
+     * @param active True to remember units from the start, e.g. when this node sends parity itself,
+     *               so the first group is protected too.
+     */
+    public FecDecoder(int capacity, boolean active) {
+        this.units = bounded(capacity);
+        this.handled = bounded(capacity);
+        this.active = active;
+    }
+
+    private static <V> Map<List<Object>, V> bounded(int capacity) {
+        return new LinkedHashMap<>() {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<List<Object>, V> eldest) {
+                return size() > capacity;
+            }
+        };
+    }
+
+    /**
+     * @return True if units are worth remembering: from the start when configured so, otherwise once a parity packet has been received.
+     */
+    public boolean isActive() {
+        return active;
+    }
+
+    /**
+     * Remembers a received unit.
+     * @param source The address the unit came from.
+     * @param firstSeq The sequence number of the first message in the unit.
+     * @param unit The unit; it is kept, so it must not be reused by the caller.
+     */
+    public synchronized void record(Object source, long firstSeq, byte[] unit) {
+        units.put(Arrays.asList(source, firstSeq), unit);
+    }
+
+    /**
+     * Processes a parity packet and forgets the units of its group.
+     * @param source The address the parity packet came from.
+     * @return The rebuilt unit if exactly one unit of the group is missing, otherwise null;
+     *         always null for a group whose parity was already processed.
+     * @throws IOException If the parity packet is truncated.
+     */
+    public synchronized byte[] recover(Object source, byte[] data, int offset, int length) throws IOException {
+        active = true;
+
+        ByteBuffer buf = ByteBuffer.wrap(data, offset, length);
+        buf.get();
+        int count = buf.get() & 0xFF;
+        if (buf.remaining() < count * FecEncoder.UNIT_HEADER_BYTES) throw new IOException("Truncated parity packet");
+
+        if (count == 0) return null;
+        // The group is identified by its first unit, which the header lists first
+        if (handled.put(Arrays.asList(source, buf.getLong(buf.position())), Boolean.TRUE) != null) return null;
+
+        long[] firstSeqs = new long[count];
+        int[] lengths = new int[count];
+        byte[][] present = new byte[count][];
+        int missing = -1;
+        int missingCount = 0;
+
+        for (int i = 0; i < count; i++) {
+            firstSeqs[i] = buf.getLong();
+            lengths[i] = buf.getInt();
+            present[i] = units.remove(Arrays.asList(source, firstSeqs[i]));
+
+            // A remembered unit of another length is stale, e.g. from before a sequence reset
+            if (present[i] != null && present[i].length != lengths[i]) present[i] = null;
+            if (present[i] == null) {
+                missing = i;
+                missingCount++;
+            }
+        }
+
+        if (missingCount != 1) return null;
+        if (buf.remaining() < lengths[missing]) throw new IOException("Truncated parity packet");
+
+        byte[] rebuilt = new byte[lengths[missing]];
+        int parityStart = buf.position();
+        for (int j = 0; j < rebuilt.length; j++) rebuilt[j] = data[parityStart + j];
+
+        for (int i = 0; i < count; i++) {
+            if (i == missing) continue;
+            byte[] unit = present[i];
+            int n = Math.min(unit.length, rebuilt.length);
+            for (int j = 0; j < n; j++) rebuilt[j] ^= unit[j];
+        }
+        return rebuilt;
+    }
+}
@@ -0,0 +1,85 @@
+package networking;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Builds XOR parity packets over groups of sequenced multicast units (a single message or a batch),
+ * so that a receiver missing exactly one unit of a group can rebuild it without a NACK.
+ * A group closes after K units, or earlier when the sender flushes it so parity is never held back for long.
+ *
+ * Parity layout:
+ * - marker (1 byte), never the first byte of an encoded message, batch or fragment
+ * - unit count (1 byte)
+ * - per unit: first sequence number (8 bytes) and length (4 bytes)
+ * - XOR of all units, each zero-padded to the longest
+ */
+public class FecEncoder {
+    public static final byte MARKER = (byte) 0xE1;
+    static final int HEADER_BYTES = 2;
+    static final int UNIT_HEADER_BYTES = 12;
+
+    private final int groupSize;
+    private final List<Long> firstSeqs = new ArrayList<>();
+    private final List<Integer> lengths = new ArrayList<>();
+    private byte[] parity = new byte[0];
+
+    /**
+     * @param groupSize K, the number of units covered by one parity packet (at most 255).
+     */
+    public FecEncoder(int groupSize) {
+        this.groupSize = Math.min(groupSize, 255);
+    }
+
+    /**
+     * Adds a unit to the current group.
+     * @param firstSeq The sequence number of the first message in the unit.
+     * @param unit The unit as sent on the wire, before fragmentation.
+     * @return The parity packet if this unit completed the group, otherwise null.
+     */
+    public byte[] add(long firstSeq, byte[] unit) {
+        if (unit.length > parity.length) {
+            byte[] grown = new byte[unit.length];
+            System.arraycopy(parity, 0, grown, 0, parity.length);
+            parity = grown;
+        }
+        for (int i = 0; i < unit.length; i++) parity[i] ^= unit[i];
+
+        firstSeqs.add(firstSeq);
+        lengths.add(unit.length);
+
+        return firstSeqs.size() >= groupSize ? drain() : null;
+    }
+
+    public boolean isEmpty() {
+        return firstSeqs.isEmpty();
+    }
+
+    /**
+     * Closes the current group early.
+     * @return The parity packet for the units added so far, or null if there are none.
+     */
+    public byte[] drain() {
+        if (firstSeqs.isEmpty()) return null;
+
+        ByteBuffer buf = ByteBuffer.allocate(HEADER_BYTES + firstSeqs.size() * UNIT_HEADER_BYTES + parity.length);
+        buf.put(MARKER).put((byte) firstSeqs.size());
+        for (int i = 0; i < firstSeqs.size(); i++) {
+            buf.putLong(firstSeqs.get(i)).putInt(lengths.get(i));
+        }
+        buf.put(parity);
+
+        firstSeqs.clear();
+        lengths.clear();
+        parity = new byte[0];
+        return buf.array();
+    }
+
+    /**
+     * @return True if the datagram is a parity packet.
+     */
+    public static boolean isParity(byte[] data, int offset, int length) {
+        return length >= HEADER_BYTES && data[offset] == MARKER;
+    }
+}
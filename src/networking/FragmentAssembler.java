@@ -0,0 +1,156 @@
+package networking;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * Reassembles messages split by {@link MulticastFragmenter}.
+ * Partial messages are keyed by the datagram source and message ID, bounded in total size, and dropped after a timeout.
+ * Sequenced messages that had to be dropped are reported so the receiver can NACK them instead of waiting for a gap.
+ */
+public class FragmentAssembler {
+    private final long timeoutMs;
+    private final long maxBufferedBytes;
+
+    // Insertion order is arrival order, so the oldest partial message is evicted first
+    private final LinkedHashMap<Key, Partial> partials = new LinkedHashMap<>();
+    private long bufferedBytes = 0;
+
+    public FragmentAssembler(long timeoutMs, long maxBufferedBytes) {
+        this.timeoutMs = timeoutMs;
+        this.maxBufferedBytes = maxBufferedBytes;
+    }
+
+    /**
+     * Adds a fragment.
+     * @param source The address the datagram came from.
+     * @param data The datagram.
+     * @param offset The start of the datagram in data.
+     * @param length The datagram length.
+     * @param now The current time in milliseconds.
+     * @param abandoned Receives the sequence numbers of sequenced messages evicted to make room.
+     * @return The complete message once its last fragment arrives, otherwise null.
+     */
+    public synchronized byte[] accept(Object source, byte[] data, int offset, int length, long now, List<Long> abandoned) {
+        ByteBuffer buf = ByteBuffer.wrap(data, offset, length);
+        buf.get();
+        int messageId = buf.getInt();
+        long seq = buf.getLong();
+        int index = buf.getShort() & 0xFFFF;
+        int count = buf.getShort() & 0xFFFF;
+        int totalLength = buf.getInt();
+        int start = buf.getInt();
+
+        if (count == 0 || index >= count || totalLength <= 0 || totalLength > maxBufferedBytes) return null;
+
+        Key key = new Key(source, messageId);
+        Partial p = partials.get(key);
+        if (p == null) {
+            while (!partials.isEmpty() && bufferedBytes + totalLength > maxBufferedBytes) {
+                evict(partials.keySet().iterator().next(), abandoned);
+            }
+            p = new Partial(seq, count, totalLength, now);
+            partials.put(key, p);
+            bufferedBytes += totalLength;
+        } else if (p.count != count || p.data.length != totalLength) {
+            return null;
+        }
+
+        if (p.received[index]) return null;
+
+        int bodyBytes = buf.remaining();
+        if (start < 0 || start + bodyBytes > p.data.length) return null;
+
+        buf.get(p.data, start, bodyBytes);
+        p.received[index] = true;
+        p.receivedCount++;
+
+        if (p.receivedCount < p.count) return null;
+
+        partials.remove(key);
+        bufferedBytes -= p.data.length;
+        return p.data;
+    }
+
+    /**
+     * Drops partial messages that have been incomplete for longer than the timeout.
+     * @param now The current time in milliseconds.
+     * @return The sequence numbers of the sequenced messages that were dropped.
+     */
+    public synchronized List<Long> expire(long now) {
+        List<Long> abandoned = new ArrayList<>();
+        Iterator<Partial> it = partials.values().iterator();
+        while (it.hasNext()) {
+            Partial p = it.next();
+            if (now - p.startedAt < timeoutMs) continue;
+
+            it.remove();
+            bufferedBytes -= p.data.length;
+            if (p.sequenceNumber > 0) abandoned.add(p.sequenceNumber);
+        }
+        return abandoned;
+    }
+
+    /**
+     * @return The number of messages currently being reassembled.
+     */
+    public synchronized int getPendingCount() {
+        return partials.size();
+    }
+
+    /**
+     * @return The bytes reserved for messages currently being reassembled.
+     */
+    public synchronized long getBufferedBytes() {
+        return bufferedBytes;
+    }
+
+    private void evict(Key key, List<Long> abandoned) {
+        Partial p = partials.remove(key);
+        bufferedBytes -= p.data.length;
+        if (p.sequenceNumber > 0) abandoned.add(p.sequenceNumber);
+    }
+
+    private static final class Partial {
+        final long sequenceNumber;
+        final int count;
+        final byte[] data;
+        final boolean[] received;
+        final long startedAt;
+        int receivedCount = 0;
+
+        Partial(long sequenceNumber, int count, int totalLength, long startedAt) {
+            this.sequenceNumber = sequenceNumber;
+            this.count = count;
+            this.data = new byte[totalLength];
+            this.received = new boolean[count];
+            this.startedAt = startedAt;
+        }
+    }
+
+    private static final class Key {
+        final Object source;
+        final int messageId;
+
+        Key(Object source, int messageId) {
+            this.source = source;
+            this.messageId = messageId;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Key)) return false;
+            Key k = (Key) o;
+            return messageId == k.messageId && Objects.equals(source, k.source);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(source, messageId);
+        }
+    }
+}
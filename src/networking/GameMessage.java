@@ -40,6 +40,9 @@ public class GameMessage implements Serializable {
     
     public long sequenceNumber = -1; 
 
+    // Leadership term that sequenced this message, so (epoch, sequenceNumber) orders the stream across leaders; 0 when untagged
+    public long epoch = 0;
+
     public GameMessage(Type type) {
         this.type = type;
         this.senderIp = NetworkConfig.MY_IP;
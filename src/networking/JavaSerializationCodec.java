@@ -0,0 +1,37 @@
+package networking;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.UncheckedIOException;
+
+/**
+ * The original wire format: a full ObjectOutputStream per message, class descriptors included.
+ * Kept for compatibility with older nodes and as the benchmark baseline.
+ */
+public class JavaSerializationCodec implements MessageCodec {
+    @Override
+    public byte[] encode(GameMessage msg) {
+        try {
+            ByteArrayOutputStream baos = new ByteArrayOutputStream();
+            ObjectOutputStream oos = new ObjectOutputStream(baos);
+            oos.writeObject(msg);
+            oos.close();
+            return baos.toByteArray();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Override
+    public GameMessage decode(byte[] data, int offset, int length) throws IOException {
+        try {
+            ObjectInputStream ois = new ObjectInputStream(new ByteArrayInputStream(data, offset, length));
+            return (GameMessage) ois.readObject();
+        } catch (ClassNotFoundException | ClassCastException e) {
+            throw new IOException("Not a GameMessage: " + e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,27 @@
+package networking;
+
+import java.io.IOException;
+
+/**
+ * Converts GameMessages to and from their wire representation.
+ * Both the TCP mesh and UDP multicast use the codec selected by {@code wire.codec} in network.config.
+ */
+public interface MessageCodec {
+    byte[] encode(GameMessage msg);
+
+    GameMessage decode(byte[] data, int offset, int length) throws IOException;
+
+    default GameMessage decode(byte[] data) throws IOException {
+        return decode(data, 0, data.length);
+    }
+
+    /**
+     * Resolves a codec by its configuration name.
+     * @param name "binary" (default) or "java" for the legacy Java serialization format.
+     * @return The matching codec.
+     */
+    static MessageCodec forName(String name) {
+        if ("java".equalsIgnoreCase(name)) return new JavaSerializationCodec();
+        return new BinaryMessageCodec();
+    }
+}
@@ -0,0 +1,108 @@
+package networking;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Packs consecutive encoded messages into one datagram of at most maxDatagramBytes.
+ * A batch holding a single message is sent as that message, so batching never adds overhead to lone messages.
+ *
+ * Batch layout:
+ * - marker (1 byte), never the first byte of an encoded message or a fragment
+ * - message count (2 bytes)
+ * - per message: length (2 bytes) followed by the encoded message
+ */
+public class MulticastBatcher {
+    public static final byte MARKER = (byte) 0xB1;
+    private static final int HEADER_BYTES = 3;
+    private static final int ENTRY_HEADER_BYTES = 2;
+
+    private final int maxDatagramBytes;
+    private final List<byte[]> pending = new ArrayList<>();
+    private int pendingBytes = HEADER_BYTES;
+
+    public MulticastBatcher(int maxDatagramBytes) {
+        this.maxDatagramBytes = maxDatagramBytes;
+    }
+
+    /**
+     * @return True if the message is small enough to share a datagram with others.
+     */
+    public boolean fits(byte[] message) {
+        return HEADER_BYTES + ENTRY_HEADER_BYTES + message.length <= maxDatagramBytes;
+    }
+
+    /**
+     * Adds a message that {@link #fits(byte[])} to the batch.
+     * @return The previous batch as a datagram if the message did not fit alongside it, otherwise null.
+     */
+    public byte[] add(byte[] message) {
+        byte[] full = null;
+        if (pendingBytes + ENTRY_HEADER_BYTES + message.length > maxDatagramBytes) {
+            full = drain();
+        }
+        pending.add(message);
+        pendingBytes += ENTRY_HEADER_BYTES + message.length;
+        return full;
+    }
+
+    public boolean isEmpty() {
+        return pending.isEmpty();
+    }
+
+    /**
+     * Empties the batch.
+     * @return The datagram to send, or null if the batch was empty.
+     */
+    public byte[] drain() {
+        if (pending.isEmpty()) return null;
+
+        byte[] datagram;
+        if (pending.size() == 1) {
+            datagram = pending.get(0);
+        } else {
+            ByteBuffer buf = ByteBuffer.allocate(pendingBytes);
+            buf.put(MARKER).putShort((short) pending.size());
+            for (byte[] message : pending) {
+                buf.putShort((short) message.length).put(message);
+            }
+            datagram = buf.array();
+        }
+
+        pending.clear();
+        pendingBytes = HEADER_BYTES;
+        return datagram;
+    }
+
+    /**
+     * @return True if the datagram is a batch of several messages.
+     */
+    public static boolean isBatch(byte[] data, int offset, int length) {
+        return length >= HEADER_BYTES && data[offset] == MARKER;
+    }
+
+    /**
+     * Splits a batch datagram back into its encoded messages, in the order they were added.
+     * @throws IOException If the batch is truncated.
+     */
+    public static List<byte[]> unpack(byte[] data, int offset, int length) throws IOException {
+        ByteBuffer buf = ByteBuffer.wrap(data, offset, length);
+        buf.get();
+        int count = buf.getShort() & 0xFFFF;
+
+        List<byte[]> messages = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            if (buf.remaining() < ENTRY_HEADER_BYTES) throw new IOException("Truncated batch");
+            int len = buf.getShort() & 0xFFFF;
+            if (buf.remaining() < len) throw new IOException("Truncated batch");
+
+            int start = buf.position();
+            messages.add(Arrays.copyOfRange(data, start, start + len));
+            buf.position(start + len);
+        }
+        return messages;
+    }
+}
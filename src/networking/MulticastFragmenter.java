@@ -0,0 +1,84 @@
+package networking;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Splits encoded messages that do not fit in one datagram into fragments.
+ * Messages that fit are sent unchanged, so small messages carry no extra header.
+ *
+ * Fragment layout:
+ * - marker (1 byte), never the first byte of an encoded message
+ * - message ID (4 bytes), unique per sender
+ * - sequence number of the message (8 bytes), -1 if unsequenced
+ * - fragment index (2 bytes)
+ * - fragment count (2 bytes)
+ * - total message length (4 bytes)
+ * - offset of this fragment in the message (4 bytes)
+ * - fragment body
+ */
+public class MulticastFragmenter {
+    public static final byte MARKER = (byte) 0xF1;
+    public static final int HEADER_BYTES = 25;
+    public static final int MAX_FRAGMENTS = 0xFFFF;
+
+    // IPv4 and UDP headers
+    private static final int IP_UDP_OVERHEAD = 28;
+
+    private MulticastFragmenter() {}
+
+    /**
+     * @param mtu The link MTU in bytes.
+     * @return The largest datagram that fits in one link-layer frame.
+     */
+    public static int maxDatagramBytes(int mtu) {
+        return Math.max(HEADER_BYTES + 1, Math.min(mtu - IP_UDP_OVERHEAD, MulticastSender.MAX_DATAGRAM_BYTES));
+    }
+
+    /**
+     * @return True if the datagram is a fragment rather than a whole encoded message.
+     */
+    public static boolean isFragment(byte[] data, int offset, int length) {
+        return length >= HEADER_BYTES && data[offset] == MARKER;
+    }
+
+    /**
+     * Splits an encoded message into datagrams of at most maxDatagramBytes.
+     * @param message The encoded message.
+     * @param messageId An ID unique among this sender's fragmented messages.
+     * @param sequenceNumber The sequence number of the message, so receivers can NACK it if fragments are lost.
+     * @param maxDatagramBytes The largest datagram to produce.
+     * @return The message itself if it fits, otherwise its fragments in order.
+     */
+    public static List<byte[]> split(byte[] message, int messageId, long sequenceNumber, int maxDatagramBytes) {
+        List<byte[]> datagrams = new ArrayList<>();
+        if (message.length <= maxDatagramBytes) {
+            datagrams.add(message);
+            return datagrams;
+        }
+
+        int bodyBytes = maxDatagramBytes - HEADER_BYTES;
+        int count = (message.length + bodyBytes - 1) / bodyBytes;
+        if (count > MAX_FRAGMENTS) {
+            throw new IllegalArgumentException("Message of " + message.length + " bytes needs too many fragments");
+        }
+
+        for (int i = 0; i < count; i++) {
+            int start = i * bodyBytes;
+            int len = Math.min(bodyBytes, message.length - start);
+
+            ByteBuffer buf = ByteBuffer.allocate(HEADER_BYTES + len);
+            buf.put(MARKER)
+               .putInt(messageId)
+               .putLong(sequenceNumber)
+               .putShort((short) i)
+               .putShort((short) count)
+               .putInt(message.length)
+               .putInt(start)
+               .put(message, start, len);
+            datagrams.add(buf.array());
+        }
+        return datagrams;
+    }
+}
@@ -0,0 +1,86 @@
+package networking;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.StandardProtocolFamily;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.util.concurrent.ArrayBlockingQueue;
+
+/**
+ * Long-lived sender for the multicast group. The channel is opened and configured once
+ * (TTL, outgoing interface, loopback) and the group address is resolved once, so each datagram costs a single send call.
+ * Datagrams are staged in pooled direct buffers to avoid an extra copy into native memory per send.
+ */
+public class MulticastSender {
+    static final int MAX_DATAGRAM_BYTES = 65507;
+    private static final int POOL_SIZE = 4;
+
+    private final InetSocketAddress groupAddress;
+    private final ArrayBlockingQueue<ByteBuffer> bufferPool = new ArrayBlockingQueue<>(POOL_SIZE);
+    private volatile DatagramChannel channel;
+
+    public MulticastSender(String group, int port) {
+        this.groupAddress = new InetSocketAddress(group, port);
+    }
+
+    /**
+     * Sends one datagram to the multicast group. Safe to call from several threads.
+     * @param data The datagram contents.
+     * @param offset The start of the datagram in data.
+     * @param length The datagram length, at most {@link #MAX_DATAGRAM_BYTES}.
+     * @throws IOException If the channel cannot be opened or the send fails.
+     */
+    public void send(byte[] data, int offset, int length) throws IOException {
+        if (length > MAX_DATAGRAM_BYTES) {
+            throw new IOException("Datagram of " + length + " bytes exceeds the UDP limit");
+        }
+
+        DatagramChannel ch = channel();
+        ByteBuffer buf = bufferPool.poll();
+        if (buf == null) buf = ByteBuffer.allocateDirect(MAX_DATAGRAM_BYTES);
+
+        try {
+            buf.clear();
+            buf.put(data, offset, length).flip();
+            ch.send(buf, groupAddress);
+        } finally {
+            bufferPool.offer(buf);
+        }
+    }
+
+    public void send(byte[] data) throws IOException {
+        send(data, 0, data.length);
+    }
+
+    /**
+     * Closes the channel. A later send reopens it.
+     */
+    public synchronized void close() {
+        if (channel == null) return;
+        try { channel.close(); } catch (IOException e) {}
+        channel = null;
+    }
+
+    /**
+     * @return The open channel, opening and configuring it on first use or after a failure closed it.
+     */
+    private DatagramChannel channel() throws IOException {
+        DatagramChannel ch = channel;
+        if (ch != null && ch.isOpen()) return ch;
+
+        synchronized (this) {
+            if (channel != null && channel.isOpen()) return channel;
+
+            ch = DatagramChannel.open(StandardProtocolFamily.INET);
+            ch.setOption(StandardSocketOptions.IP_MULTICAST_TTL, NetworkConfig.MULTICAST_TTL);
+            ch.setOption(StandardSocketOptions.IP_MULTICAST_LOOP, true);
+            if (NetworkConfig.MY_INTERFACE != null) {
+                ch.setOption(StandardSocketOptions.IP_MULTICAST_IF, NetworkConfig.MY_INTERFACE);
+            }
+            channel = ch;
+            return ch;
+        }
+    }
+}
@@ -8,6 +8,7 @@ import java.net.NetworkInterface;
 import java.net.SocketException;
 import java.util.Properties;
 import java.util.Random;
+import java.util.concurrent.CompletableFuture;
 
 import static util.ConsolePrint.printError;
 import static util.ConsolePrint.printNetworking;
@@ -22,6 +23,37 @@ public class NetworkConfig {
     public static int MY_PORT = 5000 + new Random().nextInt(1000);
     public static String MY_IP;
     public static NetworkInterface MY_INTERFACE;
+    public static int TCP_IO_THREADS = 2;
+    public static String WIRE_CODEC = "binary";
+    public static int TCP_QUEUE_CAPACITY = 1024;
+    public static OutboundQueue.DropPolicy TCP_QUEUE_POLICY = OutboundQueue.DropPolicy.DISCONNECT;
+    public static String HEARTBEAT_MODE = "multicast";
+    public static double FAILURE_PHI_THRESHOLD = 8.0;
+    public static long FAILURE_ACCEPTABLE_PAUSE_MS = 0;
+    public static int MULTICAST_MTU = 1500;
+    public static int REASSEMBLY_TIMEOUT_MS = 1000;
+    public static int REASSEMBLY_MAX_BYTES = 4 * 1024 * 1024;
+    public static int MULTICAST_RECEIVE_THREADS = 2;
+    public static int MULTICAST_RING_SLOTS = 1024;
+    public static int MULTICAST_BATCH_LINGER_MS = 5;
+    public static int MULTICAST_FEC_GROUP = 0;
+    public static int MULTICAST_FEC_WINDOW_MS = 100;
+    public static int SEQUENCER_HISTORY_CAPACITY = 4096;
+    public static long SEQUENCER_HISTORY_MAX_BYTES = 8 * 1024 * 1024;
+    public static long SEQUENCER_HISTORY_RETENTION_MS = 10 * 60 * 1000;
+    public static int HOLDBACK_WINDOW = 1024;
+    public static String SEQUENCER_LOG_DIR = "";
+    public static int SEQUENCER_LOG_SEGMENT_BYTES = 16 * 1024 * 1024;
+    public static int SEQUENCER_LOG_SEGMENTS = 8;
+    public static long SEQUENCER_LOG_FLUSH_MS = 10;
+    public static int SNAPSHOT_INTERVAL = 256;
+    public static int SEQUENCER_GROUP_COMMIT_US = 0;
+    public static String LEADER_ROTATION = "schedule";
+    public static int LEADER_ROTATION_TIMEOUT_MS = 3000;
+    public static int LEADER_HANDOVER_WINDOW = 256;
+    public static int LEADER_HANDOVER_WAIT_MS = 500;
+    public static int LEADER_STANDBY_TIMEOUT_MS = 1000;
+    public static int BOOTSTRAP_QUORUM = 3;
 
     /**
      * Loads network configuration from network.config file or uses default settings.
@@ -30,8 +62,41 @@ public class NetworkConfig {
      * - MULTICAST_PORT: 8888
      * - MULTICAST_TTL: 1
      * - MY_PORT: Random port between 5000 and 6000
+     * - TCP_IO_THREADS: 2
+     * - WIRE_CODEC: binary
+     * - TCP_QUEUE_CAPACITY: 1024 frames per peer
+     * - TCP_QUEUE_POLICY: DISCONNECT (or DROP_OLDEST / DROP_NEWEST)
+     * - HEARTBEAT_MODE: multicast (or tcp)
+     * - FAILURE_PHI_THRESHOLD: 8.0
+     * - FAILURE_ACCEPTABLE_PAUSE_MS: 0 (silence tolerated on top of the observed heartbeat interval)
+     * - MULTICAST_MTU: MTU of the selected interface, or 1500
+     * - REASSEMBLY_TIMEOUT_MS: 1000
+     * - REASSEMBLY_MAX_BYTES: 4 MiB
+     * - MULTICAST_RECEIVE_THREADS: 2
+     * - MULTICAST_RING_SLOTS: 1024
+     * - MULTICAST_BATCH_LINGER_MS: 5 (0 disables batching)
+     * - MULTICAST_FEC_GROUP: 0 (FEC disabled; K > 0 sends one parity packet per K sequenced units)
+     * - MULTICAST_FEC_WINDOW_MS: 100
+     * - SEQUENCER_HISTORY_CAPACITY: 4096 messages
+     * - SEQUENCER_HISTORY_MAX_BYTES: 8 MiB
+     * - SEQUENCER_HISTORY_RETENTION_MS: 10 minutes
+     * - HOLDBACK_WINDOW: 1024 messages
+     * - SEQUENCER_LOG_DIR: empty, so the log is off and NACKs are served from the in-memory history
+     * - SEQUENCER_LOG_SEGMENT_BYTES: 16 MiB
+     * - SEQUENCER_LOG_SEGMENTS: 8
+     * - SEQUENCER_LOG_FLUSH_MS: 10 (0 forces after every append)
+     * - SNAPSHOT_INTERVAL: 256 messages between table snapshots (0 disables snapshots)
+     * - SEQUENCER_GROUP_COMMIT_US: 0 (no lingering; actions queued while another thread is sequencing are still batched)
+     * - LEADER_ROTATION: schedule (or election for a Bully round after every hand)
+     * - LEADER_ROTATION_TIMEOUT_MS: 3000 before an election replaces a scheduled dealer that never took over
+     * - LEADER_HANDOVER_WINDOW: 256 recent messages handed to the next dealer so it can repair the previous hand
+     * - LEADER_HANDOVER_WAIT_MS: 500 the next dealer waits for the direct handover before rebuilding from its own table
+     * - LEADER_STANDBY_TIMEOUT_MS: 1000 before an election replaces a crashed dealer whose standby never took over
+     * - BOOTSTRAP_QUORUM: 3 connected peers before a starting node holds the first election
      */
     public static void load() {
+        // Enumerating the interfaces is the slow part of loading, so it runs while the file is parsed
+        CompletableFuture<Void> discovery = CompletableFuture.runAsync(NetworkConfig::discoverInterface);
         Properties props = new Properties();
 
         try (FileInputStream fis = new FileInputStream("network.config")) {
@@ -39,6 +104,7 @@ public class NetworkConfig {
             printNetworking("[Config] Loaded network.config");
         } catch (Exception e) {
             printError("[Config] No network.config found, using defaults.");
+            discovery.join();
             return;
         }
 
@@ -50,9 +116,84 @@ public class NetworkConfig {
 
         MY_PORT = Integer.parseInt(props.getProperty("port", String.valueOf(MY_PORT)));
 
+        TCP_IO_THREADS = Integer.parseInt(props.getProperty("tcp.io.threads", String.valueOf(TCP_IO_THREADS)));
+
+        WIRE_CODEC = props.getProperty("wire.codec", WIRE_CODEC);
+
+        TCP_QUEUE_CAPACITY = Integer.parseInt(props.getProperty("tcp.queue.capacity", String.valueOf(TCP_QUEUE_CAPACITY)));
+
+        String queuePolicy = props.getProperty("tcp.queue.policy", TCP_QUEUE_POLICY.name()).trim().toUpperCase();
+        try {
+            TCP_QUEUE_POLICY = OutboundQueue.DropPolicy.valueOf(queuePolicy);
+        } catch (IllegalArgumentException e) {
+            // Checked here, since a bad value would otherwise surface in the I/O loop when a connection is created
+            printError("[Config] Unknown tcp.queue.policy '" + queuePolicy + "', using " + TCP_QUEUE_POLICY + ".");
+        }
+
+        HEARTBEAT_MODE = props.getProperty("heartbeat.mode", HEARTBEAT_MODE).toLowerCase();
+
+        FAILURE_PHI_THRESHOLD = Double.parseDouble(props.getProperty("failure.phi.threshold", String.valueOf(FAILURE_PHI_THRESHOLD)));
+
+        FAILURE_ACCEPTABLE_PAUSE_MS = Long.parseLong(props.getProperty("failure.acceptable.pause.ms", String.valueOf(FAILURE_ACCEPTABLE_PAUSE_MS)));
+
+        REASSEMBLY_TIMEOUT_MS = Integer.parseInt(props.getProperty("multicast.reassembly.timeout.ms", String.valueOf(REASSEMBLY_TIMEOUT_MS)));
+
+        REASSEMBLY_MAX_BYTES = Integer.parseInt(props.getProperty("multicast.reassembly.max.bytes", String.valueOf(REASSEMBLY_MAX_BYTES)));
+
+        MULTICAST_RECEIVE_THREADS = Integer.parseInt(props.getProperty("multicast.receive.threads", String.valueOf(MULTICAST_RECEIVE_THREADS)));
+
+        MULTICAST_RING_SLOTS = Integer.parseInt(props.getProperty("multicast.ring.slots", String.valueOf(MULTICAST_RING_SLOTS)));
+
+        MULTICAST_BATCH_LINGER_MS = Integer.parseInt(props.getProperty("multicast.batch.linger.ms", String.valueOf(MULTICAST_BATCH_LINGER_MS)));
+
+        MULTICAST_FEC_GROUP = Integer.parseInt(props.getProperty("multicast.fec.group", String.valueOf(MULTICAST_FEC_GROUP)));
+
+        MULTICAST_FEC_WINDOW_MS = Integer.parseInt(props.getProperty("multicast.fec.window.ms", String.valueOf(MULTICAST_FEC_WINDOW_MS)));
+
+        SEQUENCER_HISTORY_CAPACITY = Integer.parseInt(props.getProperty("sequencer.history.capacity", String.valueOf(SEQUENCER_HISTORY_CAPACITY)));
+
+        SEQUENCER_HISTORY_MAX_BYTES = Long.parseLong(props.getProperty("sequencer.history.max.bytes", String.valueOf(SEQUENCER_HISTORY_MAX_BYTES)));
+
+        SEQUENCER_HISTORY_RETENTION_MS = Long.parseLong(props.getProperty("sequencer.history.retention.ms", String.valueOf(SEQUENCER_HISTORY_RETENTION_MS)));
+
+        HOLDBACK_WINDOW = Integer.parseInt(props.getProperty("holdback.window", String.valueOf(HOLDBACK_WINDOW)));
+
+        SEQUENCER_LOG_DIR = props.getProperty("sequencer.log.dir", SEQUENCER_LOG_DIR).trim();
+
+        SEQUENCER_LOG_SEGMENT_BYTES = Integer.parseInt(props.getProperty("sequencer.log.segment.bytes", String.valueOf(SEQUENCER_LOG_SEGMENT_BYTES)));
+
+        SEQUENCER_LOG_SEGMENTS = Integer.parseInt(props.getProperty("sequencer.log.segments", String.valueOf(SEQUENCER_LOG_SEGMENTS)));
+
+        SEQUENCER_LOG_FLUSH_MS = Long.parseLong(props.getProperty("sequencer.log.flush.ms", String.valueOf(SEQUENCER_LOG_FLUSH_MS)));
+
+        SNAPSHOT_INTERVAL = Integer.parseInt(props.getProperty("snapshot.interval", String.valueOf(SNAPSHOT_INTERVAL)));
+
+        SEQUENCER_GROUP_COMMIT_US = Integer.parseInt(props.getProperty("sequencer.group.commit.us", String.valueOf(SEQUENCER_GROUP_COMMIT_US)));
+
+        LEADER_ROTATION = props.getProperty("leader.rotation", LEADER_ROTATION).toLowerCase();
+
+        LEADER_ROTATION_TIMEOUT_MS = Integer.parseInt(props.getProperty("leader.rotation.timeout.ms", String.valueOf(LEADER_ROTATION_TIMEOUT_MS)));
+
+        LEADER_HANDOVER_WINDOW = Integer.parseInt(props.getProperty("leader.handover.window", String.valueOf(LEADER_HANDOVER_WINDOW)));
+
+        LEADER_HANDOVER_WAIT_MS = Integer.parseInt(props.getProperty("leader.handover.wait.ms", String.valueOf(LEADER_HANDOVER_WAIT_MS)));
+
+        LEADER_STANDBY_TIMEOUT_MS = Integer.parseInt(props.getProperty("leader.standby.timeout.ms", String.valueOf(LEADER_STANDBY_TIMEOUT_MS)));
+
+        BOOTSTRAP_QUORUM = Integer.parseInt(props.getProperty("bootstrap.quorum", String.valueOf(BOOTSTRAP_QUORUM)));
+
+        discovery.join();
+        MULTICAST_MTU = Integer.parseInt(props.getProperty("multicast.mtu", String.valueOf(MULTICAST_MTU)));
+    }
+
+    /**
+     * Picks the interface to multicast on and takes this node's IP address and the MTU from it.
+     */
+    private static void discoverInterface() {
         try {
             MY_INTERFACE = findValidNetworkInterface();
             MY_IP = getIpFromInterface();
+            if (MY_INTERFACE != null && MY_INTERFACE.getMTU() > 0) MULTICAST_MTU = MY_INTERFACE.getMTU();
         } catch (Exception e) {
             MY_IP = "unknown";
         }
@@ -0,0 +1,213 @@
+package networking;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.channels.ClosedSelectorException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static util.ConsolePrint.printError;
+
+/**
+ * Selector-based TCP transport. A fixed number of I/O loops service every peer connection,
+ * so the thread count stays constant no matter how many peers join the mesh.
+ */
+public class NioTransport {
+    /**
+     * Callbacks invoked on the I/O loop that owns the connection. Implementations must not block.
+     */
+    public interface Listener {
+        void onOpened(PeerConnection conn);
+        void onFrame(PeerConnection conn, byte[] frame);
+        void onClosed(PeerConnection conn);
+    }
+
+    /**
+     * Outcome of a non-blocking connect, reported on the I/O loop.
+     */
+    public interface ConnectCallback {
+        void onConnected(PeerConnection conn);
+        void onFailed(IOException e);
+    }
+
+    private final IoLoop[] loops;
+    private final AtomicInteger nextLoop = new AtomicInteger(0);
+    private final Listener listener;
+
+    public NioTransport(int ioThreads, Listener listener) throws IOException {
+        this.listener = listener;
+        this.loops = new IoLoop[Math.max(1, ioThreads)];
+        for (int i = 0; i < loops.length; i++) {
+            loops[i] = new IoLoop("tcp-io-" + i);
+        }
+    }
+
+    public void start() {
+        for (IoLoop loop : loops) {
+            new Thread(loop, loop.name).start();
+        }
+    }
+
+    /**
+     * Binds the server socket and accepts incoming connections on the first I/O loop.
+     * @param port The TCP port to listen on.
+     */
+    public void listen(int port) throws IOException {
+        ServerSocketChannel server = ServerSocketChannel.open();
+        server.bind(new InetSocketAddress(port));
+        server.configureBlocking(false);
+
+        IoLoop acceptor = loops[0];
+        acceptor.execute(() -> {
+            try {
+                server.register(acceptor.selector, SelectionKey.OP_ACCEPT);
+            } catch (IOException e) {
+                printError("[TCP] Could not register server socket: " + e.getMessage());
+            }
+        });
+    }
+
+    /**
+     * Starts a non-blocking outbound connection. Returns immediately; the result is reported through the callback.
+     * @param ip The IP address of the peer.
+     * @param port The port of the peer.
+     * @param callback Notified once the connection is established or has failed.
+     * @return The connection, which accepts frames only after it is established.
+     */
+    public PeerConnection connectAsync(String ip, int port, ConnectCallback callback) throws IOException {
+        SocketChannel channel = SocketChannel.open();
+        channel.configureBlocking(false);
+        channel.socket().setTcpNoDelay(true);
+
+        IoLoop loop = nextLoop();
+        PeerConnection conn = new PeerConnection(channel, loop, true);
+        conn.connectCallback = callback;
+
+        boolean connected = channel.connect(new InetSocketAddress(ip, port));
+        loop.execute(() -> {
+            try {
+                if (connected) {
+                    loop.register(conn);
+                    callback.onConnected(conn);
+                } else {
+                    conn.key = channel.register(loop.selector, SelectionKey.OP_CONNECT, conn);
+                }
+            } catch (IOException e) {
+                conn.close();
+                callback.onFailed(e);
+            }
+        });
+        return conn;
+    }
+
+    private PeerConnection adopt(SocketChannel channel) throws IOException {
+        channel.configureBlocking(false);
+        channel.socket().setTcpNoDelay(true);
+
+        IoLoop loop = nextLoop();
+        PeerConnection conn = new PeerConnection(channel, loop, false);
+        loop.execute(() -> loop.register(conn));
+        return conn;
+    }
+
+    private IoLoop nextLoop() {
+        return loops[Math.floorMod(nextLoop.getAndIncrement(), loops.length)];
+    }
+
+    /**
+     * A single selector thread. Work from other threads is handed over through a task queue.
+     */
+    class IoLoop implements Runnable {
+        final String name;
+        final Selector selector;
+        private final Queue<Runnable> tasks = new ConcurrentLinkedQueue<>();
+
+        IoLoop(String name) throws IOException {
+            this.name = name;
+            this.selector = Selector.open();
+        }
+
+        void execute(Runnable task) {
+            tasks.add(task);
+            selector.wakeup();
+        }
+
+        void register(PeerConnection conn) {
+            try {
+                conn.key = conn.channel.register(selector, SelectionKey.OP_READ, conn);
+                listener.onOpened(conn);
+            } catch (IOException e) {
+                conn.close();
+            }
+        }
+
+        void finishConnect(PeerConnection conn) {
+            ConnectCallback callback = conn.connectCallback;
+            conn.connectCallback = null;
+
+            try {
+                conn.channel.finishConnect();
+                conn.key.interestOps(SelectionKey.OP_READ);
+                listener.onOpened(conn);
+                callback.onConnected(conn);
+            } catch (IOException e) {
+                conn.close();
+                callback.onFailed(e);
+            }
+        }
+
+        void onClosed(PeerConnection conn) {
+            listener.onClosed(conn);
+        }
+
+        @Override
+        public void run() {
+            try {
+                while (true) {
+                    selector.select();
+
+                    Runnable task;
+                    while ((task = tasks.poll()) != null) task.run();
+
+                    Iterator<SelectionKey> it = selector.selectedKeys().iterator();
+                    while (it.hasNext()) {
+                        SelectionKey key = it.next();
+                        it.remove();
+                        if (!key.isValid()) continue;
+
+                        if (key.isAcceptable()) {
+                            try {
+                                SocketChannel channel = ((ServerSocketChannel) key.channel()).accept();
+                                if (channel != null) adopt(channel);
+                            } catch (IOException e) {
+                                printError("[TCP] Could not accept connection: " + e.getMessage());
+                            }
+                            continue;
+                        }
+
+                        PeerConnection conn = (PeerConnection) key.attachment();
+                        if (key.isConnectable()) {
+                            finishConnect(conn);
+                            continue;
+                        }
+
+                        try {
+                            if (key.isReadable()) conn.onReadable(listener);
+                            if (key.isValid() && key.isWritable()) conn.flush();
+                        } catch (IOException | RuntimeException e) {
+                            conn.close();
+                        }
+                    }
+                }
+            } catch (IOException | ClosedSelectorException e) {
+                printError("[TCP] I/O loop " + name + " stopped: " + e.getMessage());
+            }
+        }
+    }
+}
@@ -0,0 +1,135 @@
+package networking;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+
+/**
+ * Bounded per-peer queue of encoded frames waiting to be written by the connection's I/O loop.
+ * Control traffic (heartbeats, election, NACKs) has its own lane that is always drained first,
+ * so it never waits behind bulk game traffic such as GAME_STATE retransmissions.
+ */
+public class OutboundQueue {
+    public enum Lane {
+        HEARTBEAT,
+        CONTROL,
+        DATA;
+
+        /**
+         * Picks the lane for a message type.
+         * @param type The type of the GameMessage being sent.
+         * @return HEARTBEAT for heartbeats, CONTROL for election / repair / membership messages, DATA otherwise.
+         */
+        public static Lane of(GameMessage.Type type) {
+            switch (type) {
+                case HEARTBEAT:
+                    return HEARTBEAT;
+                case ELECTION:
+                case ELECTION_OK:
+                case COORDINATOR:
+                case NACK:
+                case LEAVE:
+                    return CONTROL;
+                default:
+                    return DATA;
+            }
+        }
+    }
+
+    /**
+     * What to do when the data lane is full.
+     * DROP_OLDEST discards the oldest queued data frame, DROP_NEWEST rejects the new frame,
+     * DISCONNECT gives up on the peer so the normal failure handling takes over.
+     */
+    public enum DropPolicy { DROP_OLDEST, DROP_NEWEST, DISCONNECT }
+
+    public enum Result { QUEUED, DROPPED, OVERFLOW }
+
+    private final ArrayDeque<ByteBuffer> control = new ArrayDeque<>();
+    private final ArrayDeque<ByteBuffer> data = new ArrayDeque<>();
+    private final int capacity;
+    private final DropPolicy policy;
+
+    // Only one heartbeat is ever pending; a newer one adds nothing
+    private ByteBuffer pendingHeartbeat;
+    private long droppedFrames = 0;
+
+    public OutboundQueue(int capacity, DropPolicy policy) {
+        this.capacity = Math.max(1, capacity);
+        this.policy = policy;
+    }
+
+    /**
+     * Adds a frame to the queue according to its lane and the drop policy.
+     * @param frame The encoded frame.
+     * @param lane The lane the frame belongs to.
+     * @return QUEUED if accepted, DROPPED if a frame was discarded, OVERFLOW if the peer should be disconnected.
+     */
+    public synchronized Result offer(ByteBuffer frame, Lane lane) {
+        if (lane == Lane.HEARTBEAT) {
+            if (pendingHeartbeat != null) return Result.DROPPED;
+            pendingHeartbeat = frame;
+            control.add(frame);
+            return Result.QUEUED;
+        }
+
+        if (lane == Lane.CONTROL) {
+            control.add(frame);
+            return Result.QUEUED;
+        }
+
+        if (data.size() >= capacity) {
+            switch (policy) {
+                case DROP_NEWEST:
+                    droppedFrames++;
+                    return Result.DROPPED;
+                case DROP_OLDEST:
+                    data.poll();
+                    data.add(frame);
+                    droppedFrames++;
+                    return Result.DROPPED;
+                case DISCONNECT:
+                default:
+                    return Result.OVERFLOW;
+            }
+        }
+
+        data.add(frame);
+        return Result.QUEUED;
+    }
+
+    /**
+     * Moves up to {@code batch.length} frames into the batch, control lane first.
+     * @param batch The array to fill.
+     * @return The number of frames moved.
+     */
+    public synchronized int drainTo(ByteBuffer[] batch) {
+        int n = 0;
+        while (n < batch.length && !control.isEmpty()) {
+            ByteBuffer frame = control.poll();
+            if (frame == pendingHeartbeat) pendingHeartbeat = null;
+            batch[n++] = frame;
+        }
+        while (n < batch.length && !data.isEmpty()) {
+            batch[n++] = data.poll();
+        }
+        return n;
+    }
+
+    public synchronized int size() {
+        return control.size() + data.size();
+    }
+
+    public synchronized boolean isEmpty() {
+        return control.isEmpty() && data.isEmpty();
+    }
+
+    public synchronized long getDroppedFrames() {
+        return droppedFrames;
+    }
+
+    public synchronized void clear() {
+        control.clear();
+        data.clear();
+        pendingHeartbeat = null;
+    }
+}
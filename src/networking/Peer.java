@@ -1,37 +1,51 @@
 package networking;
 
-import java.io.ObjectOutputStream;
-import java.net.Socket;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.List;
 import java.util.Objects;
 import java.util.Set;
+import java.util.TreeSet;
 
 /**
  * Represents a peer in the TCP mesh network, encapsulating connection details and state.
  */
 public class Peer {
     public String peerId;
-    public Socket socket;
-    public ObjectOutputStream out;
+    public PeerConnection connection;
     public int peerHash;
-    public long lastSeenTimestamp;
+    public volatile long lastSeenTimestamp;
+    public volatile long lastSentTimestamp;
+    public final PhiAccrualDetector failureDetector = new PhiAccrualDetector(
+        TcpMeshManager.HEARTBEAT_INTERVAL / 2, NetworkConfig.FAILURE_ACCEPTABLE_PAUSE_MS);
 
-    public Peer(String peerId, Socket socket, ObjectOutputStream out) {
+    public Peer(String peerId, PeerConnection connection) {
         this.peerId = peerId;
         this.peerHash = Objects.hash(peerId);
-        this.socket = socket;
-        this.out = out;
-        this.lastSeenTimestamp = System.currentTimeMillis();
+        this.connection = connection;
+        recordArrival(System.currentTimeMillis());
     }
 
-    public static long getPeerHash(String peerId, String myId, Set<String> peerIds, int roundNumber) {
-        String[] parts = peerId.split(":");
-        long ipAsNumber = Integer.parseInt(parts[0].replaceAll("\\.", ""));
-        int port = Integer.parseInt(parts[1]);
+    /**
+     * Records that any message from this peer has arrived, feeding the failure detector.
+     * @param now The arrival time in milliseconds.
+     */
+    public void recordArrival(long now) {
+        lastSeenTimestamp = now;
+        failureDetector.heartbeat(now);
+    }
+
+    /**
+     * Added to the hash of the node whose turn it is this round.
+     */
+    static final long ROUND_BONUS = 999999999999L;
 
-        long hash = ipAsNumber + port;
+    /**
+     * Computes one node's election hash from scratch. Elections use PeerRanking, which caches these per membership and round.
+     */
+    public static long getPeerHash(String peerId, String myId, Set<String> peerIds, int roundNumber) {
+        long hash = getNodeKey(peerId);
 
         List<String> peerIdList = new ArrayList<>(peerIds);
         peerIdList.add(myId);
@@ -40,9 +54,45 @@ public class Peer {
         int peerIdx = peerIdList.indexOf(peerId);
 
         if (peerIdx == (roundNumber%peerIdList.size())) {
-            hash += 999999999999L; 
+            hash += ROUND_BONUS; 
         }
 
         return hash;
     }
+
+    /**
+     * The numeric part of the election hash: the digits of the IP address read as one number, plus the port.
+     * @param peerId The node ID, ip:port.
+     * @return The key.
+     */
+    public static long getNodeKey(String peerId) {
+        int colon = peerId.lastIndexOf(':');
+        long ipAsNumber = 0;
+        for (int i = 0; i < colon; i++) {
+            char c = peerId.charAt(i);
+            if (c == '.') continue;
+            if (c < '0' || c > '9') throw new NumberFormatException("Not an IPv4 node ID: " + peerId);
+            ipAsNumber = ipAsNumber * 10 + (c - '0');
+        }
+        return ipAsNumber + Integer.parseInt(peerId.substring(colon + 1));
+    }
+
+    /**
+     * The dealer for a round, picked the same way the election hash favours one node, but computed locally.
+     * Every node that delivered the same table state gets the same answer, so rotation needs no election.
+     * @param memberIds The nodes at the table, the outgoing dealer included.
+     * @param outgoingLeaderId The dealer handing over, which is skipped when another node is available.
+     * @param roundNumber The round about to start.
+     * @return The ID of the next dealer.
+     */
+    public static String getScheduledLeader(Collection<String> memberIds, String outgoingLeaderId, int roundNumber) {
+        List<String> sorted = new ArrayList<>(new TreeSet<>(memberIds));
+        if (sorted.isEmpty()) return outgoingLeaderId;
+
+        int idx = Math.floorMod(roundNumber, sorted.size());
+        if (sorted.get(idx).equals(outgoingLeaderId) && sorted.size() > 1) {
+            idx = (idx + 1) % sorted.size();
+        }
+        return sorted.get(idx);
+    }
 }
@@ -0,0 +1,175 @@
+package networking;
+
+import java.io.IOException;
+import java.net.SocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.SocketChannel;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * A single non-blocking TCP connection owned by one of the NioTransport I/O loops.
+ * Frames on the wire are a 4-byte big-endian length followed by the frame body.
+ */
+public class PeerConnection {
+    static final int MAX_FRAME_BYTES = 16 * 1024 * 1024;
+    private static final int MAX_FRAMES_PER_WRITE = 64;
+
+    final SocketChannel channel;
+    final NioTransport.IoLoop loop;
+    SelectionKey key;
+
+    // Known up front for outbound connections, otherwise learned from the first message received
+    public volatile String peerId;
+    // True if this node opened the connection, false if the peer did
+    public final boolean initiatedHere;
+
+    // Set while an outbound connect is in progress
+    NioTransport.ConnectCallback connectCallback;
+
+    private final OutboundQueue outbound = new OutboundQueue(
+        NetworkConfig.TCP_QUEUE_CAPACITY, NetworkConfig.TCP_QUEUE_POLICY);
+    private final AtomicBoolean flushScheduled = new AtomicBoolean(false);
+    private final AtomicBoolean open = new AtomicBoolean(true);
+
+    private final ByteBuffer header = ByteBuffer.allocate(4);
+    private ByteBuffer body;
+
+    // Frames taken from the queue that are still being written, owned by the I/O loop
+    private final ByteBuffer[] inFlight = new ByteBuffer[MAX_FRAMES_PER_WRITE];
+    private volatile int inFlightStart = 0;
+    private volatile int inFlightEnd = 0;
+
+    PeerConnection(SocketChannel channel, NioTransport.IoLoop loop, boolean initiatedHere) {
+        this.channel = channel;
+        this.loop = loop;
+        this.initiatedHere = initiatedHere;
+    }
+
+    /**
+     * Wraps a frame body with its length prefix.
+     * @param body The encoded frame body.
+     * @return A read-only buffer ready to be queued on any number of connections.
+     */
+    public static ByteBuffer frame(byte[] body) {
+        ByteBuffer buf = ByteBuffer.allocate(4 + body.length);
+        buf.putInt(body.length).put(body).flip();
+        return buf.asReadOnlyBuffer();
+    }
+
+    /**
+     * Queues a length-prefixed frame for sending. Never blocks; the owning I/O loop performs the write.
+     * @param frame The frame produced by {@link #frame(byte[])}.
+     * @param lane The outbound lane the frame belongs to.
+     * @return False if the connection is closed or had to be closed because its queue overflowed.
+     */
+    public boolean send(ByteBuffer frame, OutboundQueue.Lane lane) {
+        if (!open.get()) return false;
+
+        if (outbound.offer(frame.duplicate(), lane) == OutboundQueue.Result.OVERFLOW) {
+            close();
+            return false;
+        }
+
+        if (flushScheduled.compareAndSet(false, true)) {
+            loop.execute(this::flush);
+        }
+        return true;
+    }
+
+    /**
+     * @return The number of frames waiting to be written, including a partially written batch.
+     */
+    public int getQueueDepth() {
+        return outbound.size() + (inFlightEnd - inFlightStart);
+    }
+
+    public long getDroppedFrames() {
+        return outbound.getDroppedFrames();
+    }
+
+    public boolean isOpen() {
+        return open.get();
+    }
+
+    public SocketAddress getRemoteAddress() {
+        try { return channel.getRemoteAddress(); } catch (IOException e) { return null; }
+    }
+
+    /**
+     * Closes the connection. Safe to call from any thread and more than once.
+     */
+    public void close() {
+        if (!open.compareAndSet(true, false)) return;
+        outbound.clear();
+        try { channel.close(); } catch (IOException e) {}
+        loop.execute(() -> loop.onClosed(this));
+    }
+
+    /**
+     * Reads as many complete frames as are available on the channel.
+     * Runs on the owning I/O loop only.
+     */
+    void onReadable(NioTransport.Listener listener) throws IOException {
+        while (true) {
+            if (body == null) {
+                if (channel.read(header) < 0) throw new IOException("Connection closed by peer");
+                if (header.hasRemaining()) return;
+
+                header.flip();
+                int length = header.getInt();
+                header.clear();
+
+                if (length < 0 || length > MAX_FRAME_BYTES) throw new IOException("Invalid frame length " + length);
+                body = ByteBuffer.allocate(length);
+            }
+
+            if (channel.read(body) < 0) throw new IOException("Connection closed by peer");
+            if (body.hasRemaining()) return;
+
+            byte[] frame = body.array();
+            body = null;
+            listener.onFrame(this, frame);
+        }
+    }
+
+    /**
+     * Writes queued frames until the queue is empty or the socket buffer is full.
+     * Several frames are coalesced into one gathering write, with the control lane first.
+     * Runs on the owning I/O loop only.
+     */
+    void flush() {
+        if (!open.get()) return;
+
+        try {
+            while (true) {
+                if (inFlightStart == inFlightEnd) {
+                    inFlightStart = 0;
+                    inFlightEnd = outbound.drainTo(inFlight);
+                    if (inFlightEnd == 0) break;
+                }
+
+                channel.write(inFlight, inFlightStart, inFlightEnd - inFlightStart);
+
+                while (inFlightStart < inFlightEnd && !inFlight[inFlightStart].hasRemaining()) {
+                    inFlight[inFlightStart++] = null;
+                }
+
+                if (inFlightStart < inFlightEnd) {
+                    key.interestOps(key.interestOps() | SelectionKey.OP_WRITE);
+                    return;
+                }
+            }
+
+            key.interestOps(key.interestOps() & ~SelectionKey.OP_WRITE);
+            flushScheduled.set(false);
+
+            // A sender may have queued a frame after the last drain but before the flag was cleared
+            if (!outbound.isEmpty() && flushScheduled.compareAndSet(false, true)) {
+                loop.execute(this::flush);
+            }
+        } catch (IOException e) {
+            close();
+        }
+    }
+}
@@ -0,0 +1,254 @@
+package networking;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import static util.ConsolePrint.printError;
+import static util.ConsolePrint.printNetworking;
+
+/**
+ * Opens outbound peer connections in the background so that no game or consensus thread ever waits on connection setup.
+ * Failed attempts are retried with jittered exponential backoff, and messages sent to a peer
+ * that is still connecting are held and flushed as soon as the connection is ready.
+ */
+public class PeerConnector {
+    private static final int INITIAL_BACKOFF_MS = 100;
+    private static final int MAX_BACKOFF_MS = 5000;
+    private static final int MAX_ATTEMPTS = 8;
+    private static final int CONNECT_TIMEOUT_MS = 3000;
+
+    public interface Listener {
+        /**
+         * Notified on the I/O loop once an outbound connection is established, before any held messages are flushed.
+         * @return The connection to flush the held messages on: conn, or another one already open to the same peer.
+         */
+        PeerConnection onReady(String peerId, PeerConnection conn);
+
+        /**
+         * Notified once every attempt to reach a peer has failed and the messages held for it were discarded.
+         */
+        void onGaveUp(String peerId);
+    }
+
+    /**
+     * A frame held for a peer that is still connecting, with the lane it was sent on.
+     */
+    private static final class Held {
+        final ByteBuffer frame;
+        final OutboundQueue.Lane lane;
+
+        Held(ByteBuffer frame, OutboundQueue.Lane lane) {
+            this.frame = frame;
+            this.lane = lane;
+        }
+    }
+
+    /**
+     * State of a peer we are trying to reach.
+     */
+    private static class Attempt {
+        final String peerId;
+        // In send order. Only data frames are bounded, dropping the oldest, so control frames are never lost while connecting
+        final ArrayDeque<Held> held = new ArrayDeque<>();
+        int heldData = 0;
+        boolean heldHeartbeat = false;
+        int attempts = 0;
+        PeerConnection connection;
+        ScheduledFuture<?> timeout;
+
+        Attempt(String peerId) {
+            this.peerId = peerId;
+        }
+
+        void hold(ByteBuffer frame, OutboundQueue.Lane lane) {
+            if (lane == OutboundQueue.Lane.HEARTBEAT) {
+                // One pending heartbeat says as much as several
+                if (heldHeartbeat) return;
+                heldHeartbeat = true;
+            } else if (lane == OutboundQueue.Lane.DATA) {
+                if (heldData >= NetworkConfig.TCP_QUEUE_CAPACITY) dropOldestData();
+                heldData++;
+            }
+            held.add(new Held(frame, lane));
+        }
+
+        private void dropOldestData() {
+            Iterator<Held> it = held.iterator();
+            while (it.hasNext()) {
+                if (it.next().lane == OutboundQueue.Lane.DATA) {
+                    it.remove();
+                    heldData--;
+                    return;
+                }
+            }
+        }
+
+        void clearHeld() {
+            held.clear();
+            heldData = 0;
+            heldHeartbeat = false;
+        }
+    }
+
+    private final NioTransport transport;
+    private final Listener listener;
+    private final ConcurrentHashMap<String, Attempt> pending = new ConcurrentHashMap<>();
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
+
+    public PeerConnector(NioTransport transport, Listener listener) {
+        this.transport = transport;
+        this.listener = listener;
+    }
+
+    /**
+     * Starts connecting to a peer unless an attempt is already in progress. Returns immediately.
+     * @param peerId The ID (ip:port) of the peer.
+     */
+    public void connect(String peerId) {
+        Attempt attempt = new Attempt(peerId);
+        if (pending.putIfAbsent(peerId, attempt) == null) {
+            scheduler.execute(() -> tryConnect(attempt));
+        }
+    }
+
+    /**
+     * Holds a frame for a peer that is not connected yet and starts connecting if needed.
+     * @param peerId The ID of the peer.
+     * @param frame The encoded frame.
+     * @param lane The outbound lane of the frame.
+     * @return False if the connection became ready in the meantime and the frame should be sent directly.
+     */
+    public boolean enqueue(String peerId, ByteBuffer frame, OutboundQueue.Lane lane) {
+        Attempt attempt = pending.computeIfAbsent(peerId, id -> {
+            Attempt created = new Attempt(id);
+            scheduler.execute(() -> tryConnect(created));
+            return created;
+        });
+
+        synchronized (attempt) {
+            if (pending.get(peerId) != attempt) return false;
+            attempt.hold(frame.duplicate(), lane);
+            return true;
+        }
+    }
+
+    public boolean isConnecting(String peerId) {
+        return pending.containsKey(peerId);
+    }
+
+    /**
+     * Abandons any attempt to reach a peer and discards its held messages.
+     * @param peerId The ID of the peer.
+     */
+    public void cancel(String peerId) {
+        Attempt attempt = pending.remove(peerId);
+        if (attempt == null) return;
+
+        synchronized (attempt) {
+            if (attempt.timeout != null) attempt.timeout.cancel(false);
+            if (attempt.connection != null) attempt.connection.close();
+            attempt.clearHeld();
+        }
+    }
+
+    private void tryConnect(Attempt attempt) {
+        int generation;
+        synchronized (attempt) {
+            if (pending.get(attempt.peerId) != attempt) return;
+            generation = ++attempt.attempts;
+        }
+
+        String[] parts = attempt.peerId.split(":");
+
+        try {
+            PeerConnection conn = transport.connectAsync(parts[0], Integer.parseInt(parts[1]), new NioTransport.ConnectCallback() {
+                @Override
+                public void onConnected(PeerConnection conn) {
+                    ready(attempt, conn);
+                }
+
+                @Override
+                public void onFailed(IOException e) {
+                    retry(attempt, generation, e.getMessage());
+                }
+            });
+
+            synchronized (attempt) {
+                attempt.connection = conn;
+                attempt.timeout = scheduler.schedule(() -> {
+                    if (conn.peerId == null && conn.isOpen()) {
+                        conn.close();
+                        retry(attempt, generation, "connect timed out");
+                    }
+                }, CONNECT_TIMEOUT_MS, TimeUnit.MILLISECONDS);
+            }
+        } catch (IOException | RuntimeException e) {
+            retry(attempt, generation, e.getMessage());
+        }
+    }
+
+    private void ready(Attempt attempt, PeerConnection conn) {
+        synchronized (attempt) {
+            if (pending.get(attempt.peerId) != attempt) {
+                conn.close();
+                return;
+            }
+            if (attempt.timeout != null) attempt.timeout.cancel(false);
+
+            conn.peerId = attempt.peerId;
+            PeerConnection kept = listener.onReady(attempt.peerId, conn);
+
+            // Each frame goes back on its own lane, so held control traffic keeps its priority
+            for (Held h : attempt.held) kept.send(h.frame, h.lane);
+            attempt.clearHeld();
+
+            // Only now, with the connection registered, may senders bypass the attempt;
+            // until then they find it in pending and wait on it instead of starting a second connection
+            pending.remove(attempt.peerId, attempt);
+        }
+
+        printNetworking("[TCP] Connection to " + attempt.peerId + " ready after " + attempt.attempts + " attempt(s)");
+    }
+
+    private void retry(Attempt attempt, int generation, String reason) {
+        synchronized (attempt) {
+            // Ignore stale failures from an attempt that has already been retried
+            if (pending.get(attempt.peerId) != attempt || attempt.attempts != generation) return;
+            if (attempt.timeout != null) attempt.timeout.cancel(false);
+            attempt.connection = null;
+
+            if (attempt.attempts >= MAX_ATTEMPTS) {
+                pending.remove(attempt.peerId, attempt);
+                int discarded = attempt.held.size();
+                attempt.clearHeld();
+                printError("[TCP] Could not connect to peer " + attempt.peerId + " (" + reason + "), giving up"
+                    + (discarded > 0 ? " and discarding " + discarded + " held message(s)" : ""));
+                listener.onGaveUp(attempt.peerId);
+                return;
+            }
+
+            long delay = backoffMillis(attempt.attempts);
+            printError("[TCP] Could not connect to peer " + attempt.peerId + " (" + reason + "), retrying in " + delay + "ms");
+            scheduler.schedule(() -> tryConnect(attempt), delay, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Computes the delay before the next attempt: exponential in the number of failures, capped,
+     * with "equal jitter" so that nodes which lost a peer at the same time do not retry in lockstep.
+     * @param attempts The number of attempts made so far.
+     * @return The delay in milliseconds.
+     */
+    static long backoffMillis(int attempts) {
+        long ceiling = Math.min(MAX_BACKOFF_MS, (long) INITIAL_BACKOFF_MS << Math.min(attempts - 1, 16));
+        return ceiling / 2 + ThreadLocalRandom.current().nextLong(ceiling / 2 + 1);
+    }
+}
@@ -0,0 +1,102 @@
+package networking;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Election hashes of every node in the mesh, computed once per membership and round.
+ * Peer.getPeerHash parses, copies and sorts the peer set on every call, and an election compares every peer;
+ * here the table is rebuilt only when the membership version, the peer count or the round changes,
+ * and each comparison after that is a map lookup.
+ */
+public class PeerRanking {
+    /**
+     * The hashes for one membership and round.
+     */
+    public static final class Table {
+        private final long version;
+        private final int size;
+        private final int roundNumber;
+        private final Map<String, Long> hashes;
+        private final long myHash;
+        private final List<String> higher;
+
+        private Table(long version, int size, int roundNumber, Map<String, Long> hashes, long myHash, List<String> higher) {
+            this.version = version;
+            this.size = size;
+            this.roundNumber = roundNumber;
+            this.hashes = hashes;
+            this.myHash = myHash;
+            this.higher = higher;
+        }
+
+        /**
+         * @return The node's hash; a node outside the membership gets its bare key, as in Peer.getPeerHash.
+         */
+        public long hashOf(String nodeId) {
+            Long hash = hashes.get(nodeId);
+            return hash != null ? hash : Peer.getNodeKey(nodeId);
+        }
+
+        public long getMyHash() {
+            return myHash;
+        }
+
+        /**
+         * @return The peers that outrank this node, which it must challenge in an election.
+         */
+        public List<String> getHigherPeers() {
+            return higher;
+        }
+    }
+
+    private volatile Table table;
+
+    /**
+     * @param myId The ID of this node.
+     * @param peerIds The connected peers.
+     * @param membershipVersion The version of the peer set, from TcpMeshManager.getMembershipVersion.
+     * @param roundNumber The current round.
+     * @return The table for this membership and round, reused if neither has changed.
+     */
+    public Table get(String myId, Set<String> peerIds, long membershipVersion, int roundNumber) {
+        Table current = table;
+        int size = peerIds.size();
+        if (current != null && current.version == membershipVersion && current.size == size && current.roundNumber == roundNumber) {
+            return current;
+        }
+
+        current = build(myId, peerIds, membershipVersion, roundNumber);
+        table = current;
+        return current;
+    }
+
+    private static Table build(String myId, Set<String> peerIds, long membershipVersion, int roundNumber) {
+        List<String> members = new ArrayList<>(peerIds.size() + 1);
+        members.addAll(peerIds);
+        members.add(myId);
+        Collections.sort(members);
+
+        // The same bonus Peer.getPeerHash gives, to the node at round mod n in ID order
+        int favoured = roundNumber % members.size();
+        Map<String, Long> hashes = new HashMap<>(members.size() * 2);
+        for (int i = 0; i < members.size(); i++) {
+            // A duplicate ID only counts at its first position, as indexOf does
+            if (hashes.containsKey(members.get(i))) continue;
+            long hash = Peer.getNodeKey(members.get(i));
+            if (i == favoured) hash += Peer.ROUND_BONUS;
+            hashes.put(members.get(i), hash);
+        }
+
+        long myHash = hashes.get(myId);
+        List<String> higher = new ArrayList<>();
+        for (String peerId : peerIds) {
+            if (hashes.get(peerId) > myHash) higher.add(peerId);
+        }
+        return new Table(membershipVersion, peerIds.size(), roundNumber, hashes, myHash, Collections.unmodifiableList(higher));
+    }
+}
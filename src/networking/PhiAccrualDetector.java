@@ -0,0 +1,95 @@
+package networking;
+
+/**
+ * Phi-accrual failure detector (Hayashibara et al.) for a single peer.
+ * Keeps a sliding window of heartbeat inter-arrival times and reports phi, the suspicion level
+ * that the peer has failed given how long it has been silent. phi = 1 means roughly a 10% chance
+ * of a false positive, phi = 2 a 1% chance, and so on.
+ */
+public class PhiAccrualDetector {
+    private static final int WINDOW_SIZE = 100;
+    private static final int MIN_SAMPLES = 3;
+    // Low enough that a steady LAN is suspected about 3 s into silence with 2 s heartbeats, high enough that
+    // a few milliseconds of jitter do not make phi jump
+    private static final double MIN_STD_DEV_MS = 150;
+
+    private final double[] intervals = new double[WINDOW_SIZE];
+    private final long minSampleIntervalMs;
+    private final long acceptablePauseMs;
+
+    private int count = 0;
+    private int next = 0;
+    private double sum = 0;
+    private double sumOfSquares = 0;
+
+    private long lastArrival = -1;
+    private long lastSample = -1;
+
+    /**
+     * @param minSampleIntervalMs Arrivals closer together than this only refresh the last arrival time
+     *                            and are not recorded as samples, so bursts of data traffic do not skew the distribution.
+     * @param acceptablePauseMs Extra silence tolerated on top of the observed mean, e.g. one lost heartbeat.
+     */
+    public PhiAccrualDetector(long minSampleIntervalMs, long acceptablePauseMs) {
+        this.minSampleIntervalMs = minSampleIntervalMs;
+        this.acceptablePauseMs = acceptablePauseMs;
+    }
+
+    /**
+     * Records that a message from the peer arrived.
+     * @param now The arrival time in milliseconds.
+     */
+    public synchronized void heartbeat(long now) {
+        if (lastSample >= 0 && now - lastSample >= minSampleIntervalMs) {
+            addSample(now - lastSample);
+            lastSample = now;
+        } else if (lastSample < 0) {
+            lastSample = now;
+        }
+        lastArrival = now;
+    }
+
+    /**
+     * @return True once enough samples have been collected for phi to be meaningful.
+     */
+    public synchronized boolean hasEnoughSamples() {
+        return count >= MIN_SAMPLES;
+    }
+
+    /**
+     * Computes the current suspicion level.
+     * @param now The current time in milliseconds.
+     * @return phi, or 0 while there are not enough samples.
+     */
+    public synchronized double phi(long now) {
+        if (count < MIN_SAMPLES || lastArrival < 0) return 0;
+
+        double mean = sum / count + acceptablePauseMs;
+        double variance = Math.max(0, sumOfSquares / count - (sum / count) * (sum / count));
+        double stdDev = Math.max(Math.sqrt(variance), MIN_STD_DEV_MS);
+
+        // Logistic approximation of the normal CDF, as used by Akka and Cassandra
+        double y = (now - lastArrival - mean) / stdDev;
+        double e = Math.exp(-y * (1.5976 + 0.070566 * y * y));
+        double phi = (now - lastArrival > mean)
+            ? -Math.log10(e / (1.0 + e))
+            : -Math.log10(1.0 - 1.0 / (1.0 + e));
+
+        return Double.isInfinite(phi) ? Double.MAX_VALUE : phi;
+    }
+
+    private void addSample(double interval) {
+        if (count == WINDOW_SIZE) {
+            double evicted = intervals[next];
+            sum -= evicted;
+            sumOfSquares -= evicted * evicted;
+        } else {
+            count++;
+        }
+
+        intervals[next] = interval;
+        next = (next + 1) % WINDOW_SIZE;
+        sum += interval;
+        sumOfSquares += interval * interval;
+    }
+}
@@ -1,10 +1,16 @@
 package networking;
 
 import game.NodeContext;
-import java.io.*;
-import java.net.*;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.TreeMap;
 import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLongFieldUpdater;
 
 import static util.ConsolePrint.printError;
 import static util.ConsolePrint.printNetworking;
@@ -13,15 +19,26 @@ import static util.ConsolePrint.printNetworking;
  * Manages TCP connections to peers, including connection handling, message sending, and heartbeat monitoring.
  */
 public class TcpMeshManager {
-    private static final int HEARTBEAT_INTERVAL = 2000;
+    static final int HEARTBEAT_INTERVAL = 2000;
     private static final int TIMEOUT_THRESHOLD = 6000;
+    private static final int MONITOR_INTERVAL = 250;
 
     private final int myPort;
     private final NodeContext node; 
-    private ServerSocket serverSocket;
+    private NioTransport transport;
+    private PeerConnector connector;
+    private final MessageCodec codec = MessageCodec.forName(NetworkConfig.WIRE_CODEC);
+    private final ExecutorService dispatcher = Executors.newSingleThreadExecutor();
     private boolean running = true;
     
     private ConcurrentHashMap<String, Peer> peers = new ConcurrentHashMap<>();
+    // Bumped whenever a peer joins or leaves, so rankings derived from the peer set know when to recompute
+    private volatile long membershipVersion = 0;
+    private static final AtomicLongFieldUpdater<TcpMeshManager> MEMBERSHIP_VERSION =
+        AtomicLongFieldUpdater.newUpdater(TcpMeshManager.class, "membershipVersion");
+    private final List<Runnable> membershipListeners = new CopyOnWriteArrayList<>();
+    // Serializes choosing between two connections to the same peer
+    private final Object registration = new Object();
 
     public TcpMeshManager(NodeContext node) {
         this.myPort = NetworkConfig.MY_PORT;
@@ -29,86 +46,133 @@ public class TcpMeshManager {
     }
 
     /**
-     * Starts the TCP server and associated threads for heartbeats and connection monitoring.
+     * Starts the TCP transport and associated threads for heartbeats and connection monitoring.
      */
     public void start() {
-        new Thread(this::startServer).start();
+        try {
+            transport = new NioTransport(NetworkConfig.TCP_IO_THREADS, new TransportListener());
+            connector = new PeerConnector(transport, new ConnectorListener());
+            transport.start();
+            transport.listen(myPort);
+            printNetworking("[TCP] Listening on port " + myPort);
+        } catch (IOException e) { e.printStackTrace(); }
+
         new Thread(this::sendHeartbeats).start();
         new Thread(this::monitorConnections).start();
     }
 
     /**
-     * Starts the TCP server to listen for incoming connections.
+     * Records an established connection as the current one for a peer and announces the peer
+     * unless it was already connected through another live connection.
+     * When both nodes connect at once, each side keeps the connection opened by the lower node ID and closes the other,
+     * so both end up on the same connection and no socket is left behind.
+     * @param peerId The ID of the peer.
+     * @param conn The established connection.
+     * @return The connection kept for the peer: conn, or the existing one if conn was the duplicate and has been closed.
      */
-    private void startServer() {
-        try {
-            serverSocket = new ServerSocket(myPort);
-            printNetworking("[TCP] Listening on port " + myPort);
-            while (running) {
-                handleNewConnection(serverSocket.accept());
+    private PeerConnection registerPeer(String peerId, PeerConnection conn) {
+        Peer previous;
+        boolean previousOpen;
+        synchronized (registration) {
+            previous = peers.get(peerId);
+            if (previous != null && previous.connection == conn) return conn;
+            previousOpen = previous != null && previous.connection.isOpen();
+
+            boolean iOpenLower = node.myId.compareTo(peerId) < 0;
+            if (previousOpen && previous.connection.initiatedHere == iOpenLower && conn.initiatedHere != iOpenLower) {
+                printNetworking("[TCP] Keeping the existing connection to " + peerId + ", closing the duplicate");
+                conn.close();
+                return previous.connection;
             }
-        } catch (IOException e) { e.printStackTrace(); }
+            peers.put(peerId, new Peer(peerId, conn));
+        }
+
+        if (previous == null) membershipChanged();
+        if (previousOpen) {
+            // Replaced only after the new one is in place, so its closing is not taken for a disconnect
+            previous.connection.close();
+        } else {
+            dispatcher.execute(() -> node.onPeerConnected(peerId));
+        }
+        return conn;
     }
 
     /**
-     * Handles a new incoming TCP connection by performing a handshake and starting a listener thread for that peer.
-     * @param socket The Socket object representing the new connection.
+     * Receives the outcome of background connection attempts.
      */
-    private void handleNewConnection(Socket socket) {
-        try {
-            ObjectOutputStream out = new ObjectOutputStream(socket.getOutputStream());
-            ObjectInputStream in = new ObjectInputStream(socket.getInputStream());
-
-            out.writeObject(new GameMessage(GameMessage.Type.HEARTBEAT));
-            out.flush();
-
-            if(node.election.iAmLeader) {
-                out.writeObject(new GameMessage(GameMessage.Type.COORDINATOR));
-                out.flush();
-            }
+    private class ConnectorListener implements PeerConnector.Listener {
+        @Override
+        public PeerConnection onReady(String peerId, PeerConnection conn) {
+            return registerPeer(peerId, conn);
+        }
 
-            new Thread(() -> listenToPeer(in, socket, out)).start();
-        } catch (IOException e) { e.printStackTrace(); }
+        /**
+         * The peer is treated as failed, since whatever was held for it (NACKs, election messages) is lost.
+         */
+        @Override
+        public void onGaveUp(String peerId) {
+            // It may have reached us through an inbound connection in the meantime
+            if (peers.containsKey(peerId)) return;
+            dispatcher.execute(() -> node.onPeerUnreachable(peerId));
+        }
     }
 
     /**
-     * Listens for messages from a connected peer and processes them.
-     * @param in The ObjectInputStream to read messages from the peer.
-     * @param socket The Socket representing the connection to the peer.
-     * @param out The ObjectOutputStream to send messages to the peer.
+     * Receives connection events from the I/O loops. Decoding happens on the I/O thread,
+     * routing is handed to the dispatcher so slow handlers never stall socket reads.
      */
-    private void listenToPeer(ObjectInputStream in, Socket socket, ObjectOutputStream out) {
-        String peerId = null;
-        try {
-            while (running) {
-                GameMessage msg = (GameMessage) in.readObject();
-                
+    private class TransportListener implements NioTransport.Listener {
+        /**
+         * Performs the handshake on a newly opened connection (inbound or outbound).
+         */
+        @Override
+        public void onOpened(PeerConnection conn) {
+            conn.send(encode(new GameMessage(GameMessage.Type.HEARTBEAT)), OutboundQueue.Lane.HEARTBEAT);
+
+            if (node.election.iAmLeader) {
+                conn.send(encode(new GameMessage(GameMessage.Type.COORDINATOR, node.sequencer.getEpochStart())), OutboundQueue.Lane.CONTROL);
+            }
+        }
+
+        @Override
+        public void onFrame(PeerConnection conn, byte[] frame) {
+            GameMessage msg = decode(frame);
+            if (msg == null) return;
+
+            if (conn.peerId == null) {
+                conn.peerId = msg.getSenderId();
+                registerPeer(conn.peerId, conn);
+            }
+
+            Peer p = peers.get(conn.peerId);
+            if (p != null) {
+                p.recordArrival(System.currentTimeMillis());
+            }
+
+            dispatcher.execute(() -> {
                 if (msg.type != GameMessage.Type.HEARTBEAT) {
                     printNetworking("[TCP] Received message from " + msg.getSenderId() + " of type: " + msg.type);
                 }
+                node.routeMessage(msg);
+            });
+        }
 
-                if (peerId == null) {
-                    peerId = msg.getSenderId();
-                    peers.put(peerId, new Peer(peerId, socket, out));
-                    node.onPeerConnected(peerId);
-                }
+        @Override
+        public void onClosed(PeerConnection conn) {
+            String peerId = conn.peerId;
+            if (peerId == null) return;
 
-                Peer p = peers.get(peerId);
-                if (p != null) {
-                    p.lastSeenTimestamp = System.currentTimeMillis();
-                }
-                
-                node.routeMessage(msg);
-            }
-        } catch (Exception e) {
-            node.onPeerDisconnected(peerId);
+            // A replaced connection closing must not take the current one down with it
+            Peer p = peers.get(peerId);
+            if (p == null || p.connection != conn) return;
+
+            dispatcher.execute(() -> node.onPeerDisconnected(peerId));
         }
     }
 
     /**
-     * Initiates a TCP connection to a peer given its IP address and port.
-     * @param ip The IP address of the peer.
-     * @param port The port number of the peer.
+     * Starts a background TCP connection to a peer. Returns immediately.
+     * @param targetPeerId The ID (ip:port) of the peer.
      */
     public void connectToPeer(String targetPeerId) {
         String[] parts = targetPeerId.split(":");
@@ -118,13 +182,10 @@ public class TcpMeshManager {
         if (peers.containsKey(targetPeerId)) return;
         if (ip.equals(NetworkConfig.MY_IP) && port == myPort) return;
 
-        try {
-            Socket socket = new Socket(ip, port);
-            printNetworking("[TCP] Connecting to " + targetPeerId);
-            handleNewConnection(socket);
-        } catch (IOException e) {
-            printError("[TCP] Could not connect to peer " + targetPeerId);
-        }
+        if (connector.isConnecting(targetPeerId)) return;
+
+        printNetworking("[TCP] Connecting to " + targetPeerId);
+        connector.connect(targetPeerId);
     }
 
     /**
@@ -136,36 +197,82 @@ public class TcpMeshManager {
         sendToPeer(targetPeerId, new GameMessage(GameMessage.Type.NACK, String.valueOf(sequenceNumber)));
     }
 
+    /**
+     * Sends a NACK message to a specific peer for several missing ranges at once.
+     * @param targetPeerId The ID of the target peer.
+     * @param missingRanges The missing ranges, e.g. "5-9,12".
+     */
+    public void sendNack(String targetPeerId, String missingRanges) {
+        sendToPeer(targetPeerId, new GameMessage(GameMessage.Type.NACK, missingRanges));
+    }
+
+    /**
+     * Sends several GameMessages to one peer as a single queued buffer holding all of their frames back to back,
+     * so they go out in one write instead of one per message.
+     * @param targetPeerId The ID of the target peer.
+     * @param msgs The messages, in the order they should arrive.
+     */
+    public void sendToPeer(String targetPeerId, List<GameMessage> msgs) {
+        if (msgs.isEmpty()) return;
+
+        List<byte[]> bodies = new ArrayList<>(msgs.size());
+        int total = 0;
+        for (GameMessage msg : msgs) {
+            byte[] body = codec.encode(msg);
+            bodies.add(body);
+            total += 4 + body.length;
+        }
+
+        ByteBuffer frames = ByteBuffer.allocate(total);
+        for (byte[] body : bodies) frames.putInt(body.length).put(body);
+        frames.flip();
+
+        sendFrame(targetPeerId, frames.asReadOnlyBuffer(), OutboundQueue.Lane.DATA,
+            msgs.size() + " messages (" + msgs.get(0).type + "...)");
+    }
+
     /**
      * Sends a GameMessage to a specific peer.
      * @param targetPeerId The ID of the target peer.
      * @param msg The GameMessage to be sent.
      */
     public void sendToPeer(String targetPeerId, GameMessage msg) {
+        sendFrame(targetPeerId, encode(msg), OutboundQueue.Lane.of(msg.type),
+            msg.type != GameMessage.Type.HEARTBEAT ? "message of type " + msg.type : null);
+    }
+
+    /**
+     * Queues encoded frames for a peer, holding them for the background connection if the peer is not connected yet.
+     * @param targetPeerId The ID of the target peer.
+     * @param frame One or more length-prefixed frames.
+     * @param lane The outbound lane.
+     * @param description What is being sent, for the log; null to send silently.
+     */
+    private void sendFrame(String targetPeerId, ByteBuffer frame, OutboundQueue.Lane lane, String description) {
         if (targetPeerId == null || targetPeerId.equals(node.myId)) return;
 
         Peer peer = peers.get(targetPeerId);
         if (peer == null) {
-            printError("Cannot find peer ID, reconnecting to Peer " + targetPeerId);
-            connectToPeer(targetPeerId);
-            try { Thread.sleep(300); } catch (Exception e) {}
+            // Held until the background connection is ready, the caller never waits for it
+            if (connector.enqueue(targetPeerId, frame, lane)) {
+                printError("Cannot find peer ID, reconnecting to Peer " + targetPeerId);
+                return;
+            }
             peer = peers.get(targetPeerId);
+            if (peer == null) return;
         }
 
-        try {
-            if (msg.type != GameMessage.Type.HEARTBEAT) {
-                printNetworking("[TCP] Sending message of type " + msg.type + " to peer " + targetPeerId);
-            }
-            
-            synchronized(peer) {
-                peer.out.writeObject(msg);
-                peer.out.flush();
-            }
-        } catch (IOException e) {
-            peers.remove(targetPeerId);
+        if (description != null) {
+            printNetworking("[TCP] Sending " + description + " to peer " + targetPeerId);
+        }
+
+        if (peer.connection.send(frame, lane)) {
+            peer.lastSentTimestamp = System.currentTimeMillis();
+        } else {
+            if (peers.remove(targetPeerId) != null) membershipChanged();
             node.onPeerDisconnected(targetPeerId);
             printError("[TCP] Could not send message to peer " + targetPeerId);
-        }   
+        }
     }
 
     /**
@@ -173,7 +280,37 @@ public class TcpMeshManager {
      * @param msg The GameMessage to be multicasted.
      */
     public void multicastToAll(GameMessage msg) {
-        peers.values().forEach(p -> sendToPeer(p.peerId, msg));
+        broadcast(msg, peers.keySet());
+    }
+
+    /**
+     * Sends the same GameMessage to several peers. The message is encoded once into an immutable
+     * frame and that buffer is queued on every connection, so the cost of encoding does not grow with the cluster size.
+     * @param msg The GameMessage to be sent.
+     * @param targetPeerIds The IDs of the peers to send to. Peers that are not connected are skipped.
+     */
+    public void broadcast(GameMessage msg, Collection<String> targetPeerIds) {
+        if (targetPeerIds.isEmpty()) return;
+
+        ByteBuffer frame = encode(msg);
+        OutboundQueue.Lane lane = OutboundQueue.Lane.of(msg.type);
+
+        if (msg.type != GameMessage.Type.HEARTBEAT) {
+            printNetworking("[TCP] Broadcasting message of type " + msg.type + " to " + targetPeerIds.size() + " peers");
+        }
+
+        for (String peerId : targetPeerIds) {
+            Peer peer = peers.get(peerId);
+            if (peer == null || peerId.equals(node.myId)) continue;
+
+            if (peer.connection.send(frame, lane)) {
+                peer.lastSentTimestamp = System.currentTimeMillis();
+            } else {
+                if (peers.remove(peerId) != null) membershipChanged();
+                node.onPeerDisconnected(peerId);
+                printError("[TCP] Could not send message to peer " + peerId);
+            }
+        }
     }
 
     /**
@@ -181,37 +318,71 @@ public class TcpMeshManager {
      * @param peerId The ID of the peer whose connection is to be closed.
      */
     public synchronized void closeConnection(String peerId) {
+        if (peerId != null) connector.cancel(peerId);
         if (peerId != null && peers.containsKey(peerId)) {
             Peer p = peers.remove(peerId);
-            try { p.socket.close(); } catch (Exception e) {}
+            membershipChanged();
+            p.connection.close();
         }
     }
    
     /**
-     * Sends periodic heartbeat messages to all connected peers.
+     * Sends periodic heartbeats so that peers can detect our failure.
+     * In multicast mode a single UDP heartbeat per interval reaches every peer; in tcp mode one heartbeat goes to each peer.
+     * Either way a heartbeat is skipped when the link already carried data recently, since any message counts as liveness.
      */
     private void sendHeartbeats() {
         while (running) {
             try {
                 Thread.sleep(HEARTBEAT_INTERVAL);
                 if (peers.isEmpty()) node.udp.multicastJoinRequest();
-                GameMessage hb = new GameMessage(GameMessage.Type.HEARTBEAT);
-                multicastToAll(hb);
+
+                long idleSince = System.currentTimeMillis() - HEARTBEAT_INTERVAL / 2;
+
+                if ("multicast".equals(NetworkConfig.HEARTBEAT_MODE)) {
+                    if (node.udp.getLastSentTimestamp() < idleSince) {
+                        node.udp.sendMulticast(new GameMessage(GameMessage.Type.HEARTBEAT));
+                    }
+                } else {
+                    List<String> idlePeers = new ArrayList<>();
+                    for (Peer p : peers.values()) {
+                        if (p.lastSentTimestamp < idleSince) idlePeers.add(p.peerId);
+                    }
+                    broadcast(new GameMessage(GameMessage.Type.HEARTBEAT), idlePeers);
+                }
             } catch (InterruptedException e) {}
         }
     }
 
     /**
-     * Monitors the last seen timestamps of peers and disconnects those that have timed out.
+     * Records that a peer has just shown signs of life, e.g. through a multicast message.
+     * @param peerId The ID of the peer.
+     */
+    public void markAlive(String peerId) {
+        Peer p = peers.get(peerId);
+        if (p != null) {
+            p.recordArrival(System.currentTimeMillis());
+        }
+    }
+
+    /**
+     * Monitors peer liveness and disconnects peers that are suspected to have failed.
+     * Uses each peer's phi-accrual detector once it has enough samples, and the fixed timeout until then.
      */
     private void monitorConnections() {
         while (running) {
             try {
-                Thread.sleep(1000);
+                Thread.sleep(MONITOR_INTERVAL);
                 long now = System.currentTimeMillis();
 
                 for (Peer peer : peers.values()) {
-                    if (now - peer.lastSeenTimestamp > TIMEOUT_THRESHOLD) {
+                    if (peer.failureDetector.hasEnoughSamples()) {
+                        double phi = peer.failureDetector.phi(now);
+                        if (phi > NetworkConfig.FAILURE_PHI_THRESHOLD) {
+                            printError("[TCP] Peer " + peer.peerId + " suspected (phi " + String.format("%.1f", phi) + " after " + (now - peer.lastSeenTimestamp) + "ms of silence)!");
+                            node.onPeerDisconnected(peer.peerId);
+                        }
+                    } else if (now - peer.lastSeenTimestamp > TIMEOUT_THRESHOLD) {
                         printError("[TCP] Peer " + peer.peerId + " timed out!");
                         node.onPeerDisconnected(peer.peerId);
                     }
@@ -239,6 +410,70 @@ public class TcpMeshManager {
         return (p != null) ? p.lastSeenTimestamp : 0;
     }
 
+    /**
+     * Retrieves the current phi (failure suspicion level) of a peer.
+     * @param peerId The ID of the peer.
+     * @return The phi value, or 0 if the peer is not found or has too few samples.
+     */
+    public double getPeerPhi(String peerId) {
+        Peer p = peers.get(peerId);
+        return (p != null) ? p.failureDetector.phi(System.currentTimeMillis()) : 0;
+    }
+
+    /**
+     * Retrieves the current phi of every connected peer.
+     * @return A map of peer ID to phi.
+     */
+    public Map<String, Double> getPeerPhis() {
+        long now = System.currentTimeMillis();
+        Map<String, Double> phis = new TreeMap<>();
+        peers.forEach((id, p) -> phis.put(id, p.failureDetector.phi(now)));
+        return phis;
+    }
+
+    /**
+     * Retrieves the number of frames waiting in a peer's outbound queue.
+     * @param peerId The ID of the peer.
+     * @return The queue depth, or 0 if the peer is not found.
+     */
+    public int getPeerQueueDepth(String peerId) {
+        Peer p = peers.get(peerId);
+        return (p != null) ? p.connection.getQueueDepth() : 0;
+    }
+
+    /**
+     * Retrieves the outbound queue depth of every connected peer.
+     * @return A map of peer ID to queue depth.
+     */
+    public Map<String, Integer> getPeerQueueDepths() {
+        Map<String, Integer> depths = new TreeMap<>();
+        peers.forEach((id, p) -> depths.put(id, p.connection.getQueueDepth()));
+        return depths;
+    }
+
+    /**
+     * @return A number that changes whenever a peer joins or leaves.
+     */
+    public long getMembershipVersion() {
+        return membershipVersion;
+    }
+
+    /**
+     * @param listener Run on the dispatcher after every peer join or leave.
+     */
+    public void addMembershipListener(Runnable listener) {
+        membershipListeners.add(listener);
+    }
+
+    public void removeMembershipListener(Runnable listener) {
+        membershipListeners.remove(listener);
+    }
+
+    private void membershipChanged() {
+        MEMBERSHIP_VERSION.incrementAndGet(this);
+        for (Runnable listener : membershipListeners) dispatcher.execute(listener);
+    }
+
     /**
      * Retrieves the set of currently connected peer IDs.
      * @return A Set of peer IDs.
@@ -246,4 +481,27 @@ public class TcpMeshManager {
     public Set<String> getConnectedPeerIds() {
         return peers.keySet();
     }
-}
\ No newline at end of file
+
+    /**
+     * Encodes a GameMessage into a length-prefixed frame.
+     * @param msg The GameMessage to encode.
+     * @return The frame, ready to be queued on a connection.
+     */
+    private ByteBuffer encode(GameMessage msg) {
+        return PeerConnection.frame(codec.encode(msg));
+    }
+
+    /**
+     * Decodes a frame body back into a GameMessage.
+     * @param frame The frame body received from a peer.
+     * @return The GameMessage, or null if the frame could not be read.
+     */
+    private GameMessage decode(byte[] frame) {
+        try {
+            return codec.decode(frame);
+        } catch (IOException e) {
+            printError("[TCP] Dropping unreadable frame: " + e.getMessage());
+            return null;
+        }
+    }
+}
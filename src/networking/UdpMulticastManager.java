@@ -1,7 +1,15 @@
 package networking;
 
-import java.io.*;
+import java.io.IOException;
 import java.net.*;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import game.NodeContext;
 
@@ -16,19 +24,54 @@ public class UdpMulticastManager {
     private static final int MULTICAST_PORT = NetworkConfig.MULTICAST_PORT;
     
     private final NodeContext node;
+    private final MessageCodec codec = MessageCodec.forName(NetworkConfig.WIRE_CODEC);
+    private final MulticastSender sender = new MulticastSender(MULTICAST_GROUP, MULTICAST_PORT);
+    private final int maxDatagramBytes = MulticastFragmenter.maxDatagramBytes(NetworkConfig.MULTICAST_MTU);
+    private final AtomicInteger nextFragmentedId = new AtomicInteger(0);
+    private final FragmentAssembler assembler = new FragmentAssembler(NetworkConfig.REASSEMBLY_TIMEOUT_MS, NetworkConfig.REASSEMBLY_MAX_BYTES);
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
+    // One ring per consumer; datagrams are sharded by sender, so each sender's packets are decoded in arrival order
+    // on one thread and its FEC units are always recorded before the parity packet that follows them
+    private final DatagramRing[] rings = createRings(maxDatagramBytes);
+    private final MulticastBatcher batcher = new MulticastBatcher(maxDatagramBytes);
+    private ScheduledFuture<?> batchFlush;
+    private long batchFirstSeq;
+    private final FecEncoder fecEncoder = NetworkConfig.MULTICAST_FEC_GROUP > 0 ? new FecEncoder(NetworkConfig.MULTICAST_FEC_GROUP) : null;
+    private final FecDecoder fecDecoder = new FecDecoder(256, NetworkConfig.MULTICAST_FEC_GROUP > 0);
+    private ScheduledFuture<?> parityFlush;
     private boolean running = true;
+    private volatile long lastSentTimestamp = 0;
 
     public UdpMulticastManager(NodeContext node) {
         this.node = node;
     }
 
+    private static DatagramRing[] createRings(int slotBytes) {
+        int consumers = Math.max(1, NetworkConfig.MULTICAST_RECEIVE_THREADS);
+        DatagramRing[] rings = new DatagramRing[consumers];
+        for (int i = 0; i < consumers; i++) {
+            rings[i] = new DatagramRing(Math.max(1, NetworkConfig.MULTICAST_RING_SLOTS / consumers), slotBytes);
+        }
+        return rings;
+    }
+
+    /**
+     * Starts receiving. The first JOIN_REQUEST is left to the bootstrap, which sends it once TCP is listening for the replies.
+     */
     public void start() {
         new Thread(this::listen).start();
-        new Thread(this::multicastJoinRequest).start();
+        for (int i = 0; i < rings.length; i++) {
+            DatagramRing ring = rings[i];
+            new Thread(() -> consume(ring), "udp-consumer-" + i).start();
+        }
+
+        long sweep = Math.max(50, NetworkConfig.REASSEMBLY_TIMEOUT_MS / 4);
+        scheduler.scheduleAtFixedRate(
+            () -> nackAbandoned(assembler.expire(System.currentTimeMillis())), sweep, sweep, TimeUnit.MILLISECONDS);
     }
 
     /**
-     * Listens for incoming multicast messages and processes them.
+     * Receive stage: drains the socket into the rings as fast as possible and does nothing else.
      */
     private void listen() {
         try (MulticastSocket socket = new MulticastSocket(MULTICAST_PORT)) {
@@ -38,20 +81,19 @@ public class UdpMulticastManager {
             NetworkInterface netIf = NetworkConfig.MY_INTERFACE;
             socket.joinGroup(groupAddress, netIf);
             
-            byte[] buffer = new byte[4096];
+            byte[] buffer = new byte[MulticastSender.MAX_DATAGRAM_BYTES];
+            DatagramPacket packet = new DatagramPacket(buffer, buffer.length);
             while (running) {
-                DatagramPacket packet = new DatagramPacket(buffer, buffer.length);
+                packet.setLength(buffer.length);
                 socket.receive(packet);
 
-                ObjectInputStream ois = new ObjectInputStream(new ByteArrayInputStream(packet.getData()));
-                GameMessage msg = (GameMessage) ois.readObject();
-                
-                printNetworking("[UDP] Received message from " + msg.getSenderId() + " of type: " + msg.type);
-
-                if (msg.type == GameMessage.Type.JOIN_REQUEST) {
-                    node.tcp.connectToPeer(msg.getSenderId());
-                } else {
-                    node.routeMessage(msg);
+                SocketAddress source = packet.getSocketAddress();
+                DatagramRing ring = rings[Math.floorMod(source.hashCode(), rings.length)];
+                if (!ring.offer(packet.getData(), packet.getOffset(), packet.getLength(), source)) {
+                    long dropped = ring.getDroppedCount();
+                    if (Long.bitCount(dropped) == 1) {
+                        printError("[UDP] Receive ring full, " + dropped + " packets dropped so far.");
+                    }
                 }
             }
         } catch (Exception e) {
@@ -60,22 +102,106 @@ public class UdpMulticastManager {
         }
     }
 
+    /**
+     * Decode and routing stage: takes datagrams from one ring, frees the slot as soon as the message is decoded,
+     * then routes it. A slow handler only holds up this consumer, never the socket.
+     */
+    private void consume(DatagramRing ring) {
+        while (running) {
+            DatagramRing.Slot slot;
+            try {
+                slot = ring.take();
+            } catch (InterruptedException e) {
+                return;
+            }
+
+            List<GameMessage> messages;
+            try {
+                messages = decode(slot.data, 0, slot.length, slot.source);
+            } finally {
+                ring.release(slot);
+            }
+
+            // Messages of a batch are routed in the order they were packed
+            for (GameMessage msg : messages) {
+                try {
+                    route(msg);
+                } catch (Exception e) {
+                    printError("[UDP] Error handling " + msg.type + ": " + e.getMessage());
+                }
+            }
+        }
+    }
+
+    /**
+     * Decodes a datagram, unpacking batches, feeding fragments to the reassembler and rebuilding lost units from parity.
+     * @return The decoded messages; empty if the datagram was unreadable, an incomplete fragment or parity with nothing to rebuild.
+     */
+    private List<GameMessage> decode(byte[] data, int offset, int length, SocketAddress source) {
+        List<GameMessage> messages = new ArrayList<>(1);
+
+        if (MulticastFragmenter.isFragment(data, offset, length)) {
+            List<Long> abandoned = new ArrayList<>();
+            data = assembler.accept(source, data, offset, length, System.currentTimeMillis(), abandoned);
+            nackAbandoned(abandoned);
+            if (data == null) return messages;
+            offset = 0;
+            length = data.length;
+        }
+
+        boolean rebuilt = false;
+        try {
+            if (FecEncoder.isParity(data, offset, length)) {
+                data = fecDecoder.recover(source, data, offset, length);
+                if (data == null) return messages;
+                offset = 0;
+                length = data.length;
+                rebuilt = true;
+            }
+
+            if (MulticastBatcher.isBatch(data, offset, length)) {
+                for (byte[] packed : MulticastBatcher.unpack(data, offset, length)) {
+                    messages.add(codec.decode(packed));
+                }
+            } else {
+                messages.add(codec.decode(data, offset, length));
+            }
+        } catch (IOException e) {
+            printError("[UDP] Dropping unreadable packet: " + e.getMessage());
+            return messages;
+        }
+
+        long firstSeq = messages.isEmpty() ? -1 : messages.get(0).sequenceNumber;
+        if (rebuilt) {
+            printNetworking("[UDP] Rebuilt #" + firstSeq + (messages.size() > 1 ? " to #" + (firstSeq + messages.size() - 1) : "") + " from parity.");
+        } else if (firstSeq > 0 && fecDecoder.isActive()) {
+            // Safe without ordering across threads: this sender's parity is decoded on this same consumer
+            fecDecoder.record(source, firstSeq, Arrays.copyOfRange(data, offset, offset + length));
+        }
+        return messages;
+    }
+
+    private void route(GameMessage msg) {
+        // Any multicast from a peer is proof of life, not only heartbeats
+        node.tcp.markAlive(msg.getSenderId());
+
+        if (msg.type == GameMessage.Type.HEARTBEAT) return;
+
+        printNetworking("[UDP] Received message from " + msg.getSenderId() + " of type: " + msg.type);
+
+        if (msg.type == GameMessage.Type.JOIN_REQUEST) {
+            node.tcp.connectToPeer(msg.getSenderId());
+        } else {
+            node.routeMessage(msg);
+        }
+    }
+
     /**
      * Multicasts a JOIN_REQUEST message to the multicast group.
     */
     public void multicastJoinRequest() {
-        try (MulticastSocket socket = new MulticastSocket()) {
-            socket.setTimeToLive(NetworkConfig.MULTICAST_TTL);
-            InetAddress group = InetAddress.getByName(MULTICAST_GROUP);
-            GameMessage msg = new GameMessage(GameMessage.Type.JOIN_REQUEST);
-
-            ByteArrayOutputStream baos = new ByteArrayOutputStream();
-            ObjectOutputStream oos = new ObjectOutputStream(baos);
-            oos.writeObject(msg);
-            byte[] data = baos.toByteArray();
-
-            DatagramPacket packet = new DatagramPacket(data, data.length, group, MULTICAST_PORT);
-            socket.send(packet);
+        try {
+            sender.send(codec.encode(new GameMessage(GameMessage.Type.JOIN_REQUEST)));
             printNetworking("[UDP] Multicasted JOIN_REQUEST.");
         } catch (Exception e) {
             printError("[UDP] " + e.getMessage());
@@ -85,25 +211,145 @@ public class UdpMulticastManager {
 
     /**
      * Sends a multicast message to all peers in the group.
+     * With a batch linger window configured, sequenced messages that fit are held for up to that long
+     * and packed together with the ones that follow them. Anything else flushes the batch first so order is kept.
      * @param msg The GameMessage to be sent to the group.
      */
     public void sendMulticast(GameMessage msg) {
-        try (MulticastSocket socket = new MulticastSocket()) {
-            socket.setTimeToLive(NetworkConfig.MULTICAST_TTL);
-            InetAddress group = InetAddress.getByName(MULTICAST_GROUP);
-            
-            ByteArrayOutputStream baos = new ByteArrayOutputStream();
-            ObjectOutputStream oos = new ObjectOutputStream(baos);
-            oos.writeObject(msg);
-            byte[] data = baos.toByteArray();
+        try {
+            byte[] data = codec.encode(msg);
 
-            DatagramPacket packet = new DatagramPacket(data, data.length, group, MULTICAST_PORT);
-            socket.send(packet);
-            
-            printNetworking("[UDP] Sent Multicast: " + msg.type + " (Seq: " + msg.sequenceNumber + ")");
+            synchronized (batcher) {
+                if (NetworkConfig.MULTICAST_BATCH_LINGER_MS > 0 && msg.sequenceNumber > 0 && batcher.fits(data)) {
+                    long fullFirstSeq = batchFirstSeq;
+                    if (batcher.isEmpty()) batchFirstSeq = msg.sequenceNumber;
+
+                    byte[] full = batcher.add(data);
+                    if (full != null) {
+                        sendUnit(full, fullFirstSeq);
+                        batchFirstSeq = msg.sequenceNumber;
+                    }
+                    if (batchFlush == null || batchFlush.isDone()) {
+                        batchFlush = scheduler.schedule(this::flush, NetworkConfig.MULTICAST_BATCH_LINGER_MS, TimeUnit.MILLISECONDS);
+                    }
+                } else {
+                    byte[] pending = batcher.drain();
+                    if (pending != null) sendUnit(pending, batchFirstSeq);
+                    if (msg.sequenceNumber > 0) sendUnit(data, msg.sequenceNumber);
+                    else send(data, msg.sequenceNumber);
+                }
+            }
+            lastSentTimestamp = System.currentTimeMillis();
+
+            if (msg.type != GameMessage.Type.HEARTBEAT) {
+                printNetworking("[UDP] Sent Multicast: " + msg.type + " (Seq: " + msg.sequenceNumber + ")");
+            }
         } catch (Exception e) {
             printError("[UDP] " + e.getMessage());
             //e.printStackTrace();
         }
     }
-}
\ No newline at end of file
+
+    /**
+     * Sends whatever is in the batch now rather than when the linger window has passed,
+     * for a message that must reach the group before something sent on another channel.
+     */
+    public void flush() {
+        try {
+            synchronized (batcher) {
+                byte[] pending = batcher.drain();
+                if (pending != null) sendUnit(pending, batchFirstSeq);
+            }
+        } catch (Exception e) {
+            printError("[UDP] " + e.getMessage());
+        }
+    }
+
+    /**
+     * Sends a unit of sequenced data (one message or a batch) and adds it to the current FEC group.
+     * A parity packet follows once the group holds K units, or after the FEC window so a lone unit is still protected.
+     * Must be called while holding the batcher lock.
+     * @param unit The encoded message or batch.
+     * @param firstSeq The sequence number of the first message in the unit.
+     */
+    private void sendUnit(byte[] unit, long firstSeq) throws IOException {
+        send(unit, firstSeq);
+        if (fecEncoder == null) return;
+
+        boolean groupStarted = fecEncoder.isEmpty();
+        byte[] parity = fecEncoder.add(firstSeq, unit);
+        if (parity != null) {
+            if (parityFlush != null) parityFlush.cancel(false);
+            send(parity, -1);
+        } else if (groupStarted) {
+            parityFlush = scheduler.schedule(this::flushParity, NetworkConfig.MULTICAST_FEC_WINDOW_MS, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Closes the current FEC group once the window has passed, sending parity over the units it has.
+     */
+    private void flushParity() {
+        try {
+            synchronized (batcher) {
+                byte[] parity = fecEncoder.drain();
+                if (parity != null) send(parity, -1);
+            }
+        } catch (Exception e) {
+            printError("[UDP] " + e.getMessage());
+        }
+    }
+
+    /**
+     * Sends one encoded message or batch, fragmenting it if it does not fit in a datagram.
+     * @param data The encoded message or batch.
+     * @param sequenceNumber The sequence number recorded in fragments.
+     */
+    private void send(byte[] data, long sequenceNumber) throws IOException {
+        if (data.length <= maxDatagramBytes) {
+            sender.send(data);
+            return;
+        }
+        for (byte[] fragment : MulticastFragmenter.split(data, nextFragmentedId.incrementAndGet(), sequenceNumber, maxDatagramBytes)) {
+            sender.send(fragment);
+        }
+    }
+
+    /**
+     * Asks the leader to resend sequenced messages whose fragments did not all arrive in time,
+     * rather than waiting for a later message to reveal the gap.
+     * @param sequenceNumbers The sequence numbers of the abandoned messages.
+     */
+    private void nackAbandoned(List<Long> sequenceNumbers) {
+        for (long seq : sequenceNumbers) {
+            printError("[UDP] Fragments of #" + seq + " missing after " + NetworkConfig.REASSEMBLY_TIMEOUT_MS + "ms.");
+            node.queue.reportMissing(seq);
+        }
+    }
+
+    /**
+     * @return The number of received datagrams waiting in, or being decoded from, the receive ring.
+     */
+    public int getReceiveRingOccupancy() {
+        int occupancy = 0;
+        for (DatagramRing ring : rings) occupancy += ring.getOccupancy();
+        return occupancy;
+    }
+
+    /**
+     * @return The number of datagrams dropped because the receive ring was full.
+     */
+    public long getDroppedPacketCount() {
+        long dropped = 0;
+        for (DatagramRing ring : rings) dropped += ring.getDroppedCount();
+        return dropped;
+    }
+
+    /**
+     * Retrieves the time of the last multicast sent by this node.
+     * @return The timestamp in milliseconds, or 0 if nothing has been sent yet.
+     */
+    public long getLastSentTimestamp() {
+        return lastSentTimestamp;
+    }
+}
@@ -0,0 +1,104 @@
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.PriorityQueue;
+import java.util.Random;
+
+import consensus.ReorderBuffer;
+import networking.GameMessage;
+
+/**
+ * Compares the ring-array ReorderBuffer with the PriorityQueue the HoldBackQueue used before,
+ * delivering a stream in which messages arrive shuffled within a window and some are duplicated.
+ */
+public class HoldBackQueueBenchmark {
+  private static final int MESSAGES = 1_000_000;
+  private static final int ROUNDS = 5;
+
+  // Keeps the JIT from eliminating the measured work
+  static volatile long blackhole;
+
+  public static void main(String[] args) {
+    System.out.printf("%-10s %-14s %14s%n", "shuffle", "queue", "ns/message");
+    for (int shuffle : new int[] {1, 16, 256}) {
+      GameMessage[] arrivals = arrivals(shuffle, new Random(42));
+
+      for (int i = 0; i < ROUNDS; i++) {
+        priorityQueue(arrivals);
+        ringBuffer(arrivals);
+      }
+
+      long pq = time(() -> priorityQueue(arrivals)) / arrivals.length;
+      long ring = time(() -> ringBuffer(arrivals)) / arrivals.length;
+      System.out.printf("%-10d %-14s %14d%n", shuffle, "PriorityQueue", pq);
+      System.out.printf("%-10d %-14s %14d%n", shuffle, "ReorderBuffer", ring);
+    }
+  }
+
+  /**
+   * The previous HoldBackQueue algorithm: duplicates are only discarded once they reach the head.
+   */
+  private static void priorityQueue(GameMessage[] arrivals) {
+    PriorityQueue<GameMessage> queue = new PriorityQueue<>(Comparator.comparingLong(m -> m.sequenceNumber));
+    long next = 1;
+    long sink = 0;
+
+    for (GameMessage m : arrivals) {
+      queue.add(m);
+      while (!queue.isEmpty()) {
+        GameMessage head = queue.peek();
+        if (head.sequenceNumber == next) {
+          queue.poll();
+          next++;
+          sink += head.sequenceNumber;
+        } else if (head.sequenceNumber < next) {
+          queue.poll();
+        } else {
+          break;
+        }
+      }
+    }
+    blackhole = sink + next;
+  }
+
+  private static void ringBuffer(GameMessage[] arrivals) {
+    ReorderBuffer buffer = new ReorderBuffer(1024);
+    long sink = 0;
+
+    for (GameMessage m : arrivals) {
+      if (buffer.offer(m) != ReorderBuffer.Result.BUFFERED) continue;
+      GameMessage head;
+      while ((head = buffer.poll()) != null) sink += head.sequenceNumber;
+    }
+    blackhole = sink + buffer.getNextExpected();
+  }
+
+  /**
+   * Sequence numbers 1..MESSAGES shuffled within consecutive blocks of the given size, with about 5% sent twice.
+   */
+  private static GameMessage[] arrivals(int shuffle, Random rnd) {
+    GameMessage[] ordered = new GameMessage[MESSAGES];
+    for (int i = 0; i < MESSAGES; i++) ordered[i] = new GameMessage(GameMessage.Type.GAME_INFO, null, i + 1);
+
+    for (int start = 0; start < MESSAGES; start += shuffle) {
+      int end = Math.min(start + shuffle, MESSAGES);
+      for (int i = end - 1; i > start; i--) {
+        int j = start + rnd.nextInt(i - start + 1);
+        GameMessage t = ordered[i]; ordered[i] = ordered[j]; ordered[j] = t;
+      }
+    }
+
+    GameMessage[] out = new GameMessage[MESSAGES + MESSAGES / 20];
+    int n = 0;
+    for (GameMessage m : ordered) {
+      out[n++] = m;
+      if (n < out.length && rnd.nextInt(20) == 0) out[n++] = m;
+    }
+    return Arrays.copyOf(out, n);
+  }
+
+  private static long time(Runnable r) {
+    long start = System.nanoTime();
+    r.run();
+    return System.nanoTime() - start;
+  }
+}
@@ -0,0 +1,65 @@
+import java.util.HashSet;
+import java.util.Set;
+
+import networking.Peer;
+import networking.PeerRanking;
+
+/**
+ * Compares the cost of one election's comparisons (this node against every peer) using Peer.getPeerHash
+ * on every call with looking the hashes up in a PeerRanking table built once for the membership.
+ */
+public class PeerRankingBenchmark {
+  private static final int ELECTIONS = 200;
+  private static final int ROUNDS = 3;
+
+  // Keeps the JIT from eliminating the measured work
+  static volatile long blackhole;
+
+  public static void main(String[] args) {
+    System.out.printf("%-8s %-14s %16s%n", "peers", "method", "ns/election");
+    for (int n : new int[] {4, 32, 256}) {
+      Set<String> peers = new HashSet<>();
+      for (int i = 1; i <= n; i++) peers.add("10.0." + (i / 250) + "." + (i % 250 + 1) + ":" + (5000 + i));
+      String me = "10.0.0.1:4999";
+      PeerRanking ranking = new PeerRanking();
+
+      for (int i = 0; i < ROUNDS; i++) {
+        recompute(me, peers);
+        cached(ranking, me, peers);
+      }
+
+      long recompute = time(() -> recompute(me, peers)) / ELECTIONS;
+      long cached = time(() -> cached(ranking, me, peers)) / ELECTIONS;
+      System.out.printf("%-8d %-14s %16d%n", n, "getPeerHash", recompute);
+      System.out.printf("%-8d %-14s %16d%n", n, "PeerRanking", cached);
+    }
+  }
+
+  private static void recompute(String me, Set<String> peers) {
+    long sum = 0;
+    for (int e = 0; e < ELECTIONS; e++) {
+      long myHash = Peer.getPeerHash(me, me, peers, 3);
+      for (String peer : peers) {
+        if (Peer.getPeerHash(peer, me, peers, 3) > myHash) sum++;
+      }
+    }
+    blackhole = sum;
+  }
+
+  private static void cached(PeerRanking ranking, String me, Set<String> peers) {
+    long sum = 0;
+    for (int e = 0; e < ELECTIONS; e++) {
+      PeerRanking.Table ranks = ranking.get(me, peers, 1, 3);
+      for (String peer : peers) {
+        if (ranks.hashOf(peer) > ranks.getMyHash()) sum++;
+      }
+    }
+    blackhole = sum;
+  }
+
+  private static long time(Runnable r) {
+    long start = System.nanoTime();
+    r.run();
+    return System.nanoTime() - start;
+  }
+}
@@ -0,0 +1,44 @@
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.stream.Stream;
+
+import consensus.SequenceLog;
+import networking.GameMessage;
+
+/**
+ * Sustained append rate of the SequenceLog with its default segment size and background flush,
+ * writing typical game-action payloads to a temporary directory.
+ */
+public class SequenceLogBenchmark {
+  private static final int MESSAGES = 1_000_000;
+  private static final int ROUNDS = 3;
+
+  public static void main(String[] args) throws Exception {
+    String payload = "192.168.1.20:5123:RAISE:250";
+    System.out.printf("%-8s %14s %14s%n", "round", "msgs/s", "MiB on disk");
+
+    for (int round = 1; round <= ROUNDS; round++) {
+      Path dir = Files.createTempDirectory("seqlog-bench");
+      SequenceLog log = new SequenceLog(dir, 16 * 1024 * 1024, 64, 10);
+
+      long start = System.nanoTime();
+      for (long seq = 1; seq <= MESSAGES; seq++) {
+        log.append(new GameMessage(GameMessage.Type.PLAYER_ACTION, payload, seq));
+      }
+      log.force();
+      long elapsed = System.nanoTime() - start;
+
+      long bytes;
+      try (Stream<Path> files = Files.list(dir)) {
+        bytes = files.mapToLong(p -> p.toFile().length()).sum();
+      }
+      System.out.printf("%-8d %14d %14d%n", round, MESSAGES * 1_000_000_000L / elapsed, bytes >> 20);
+
+      log.close();
+      try (Stream<Path> files = Files.walk(dir)) {
+        files.sorted(Comparator.reverseOrder()).forEach(p -> p.toFile().delete());
+      }
+    }
+  }
+}
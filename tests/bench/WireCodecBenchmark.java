@@ -0,0 +1,66 @@
+import java.util.List;
+
+import game.PokerTable;
+import game.Player;
+import networking.BinaryMessageCodec;
+import networking.GameMessage;
+import networking.JavaSerializationCodec;
+import networking.MessageCodec;
+
+/**
+ * Compares encode/decode time and bytes per message of the binary codec against Java serialization.
+ */
+public class WireCodecBenchmark {
+  private static final int WARMUP = 20_000;
+  private static final int ITERATIONS = 100_000;
+
+  // Keeps the JIT from eliminating the measured work
+  static volatile long blackhole;
+
+  public static void main(String[] args) throws Exception {
+    PokerTable table = new PokerTable();
+    for (int i = 0; i < 6; i++) table.players.add(new Player("10.0.0." + i + ":50" + i + "0", 1000));
+
+    List<GameMessage> samples = List.of(
+        msg(GameMessage.Type.HEARTBEAT, null, -1),
+        msg(GameMessage.Type.PLAYER_ACTION, "raise 50", 1234),
+        msg(GameMessage.Type.GAME_INFO, "Pot: 300 | Turn: Player 10.0.0.3:5030 (To Call: 50)", 1235),
+        msg(GameMessage.Type.GAME_STATE, PokerTable.getSerializedState(table), 1236)
+    );
+
+    MessageCodec java = new JavaSerializationCodec();
+    MessageCodec binary = new BinaryMessageCodec();
+
+    System.out.printf("%-14s %-7s %10s %14s %14s%n", "type", "codec", "bytes", "encode ns/op", "decode ns/op");
+    for (GameMessage m : samples) {
+      run(m, "java", java);
+      run(m, "binary", binary);
+    }
+  }
+
+  private static void run(GameMessage m, String name, MessageCodec codec) throws Exception {
+    byte[] encoded = codec.encode(m);
+    int iterations = m.type == GameMessage.Type.GAME_STATE ? ITERATIONS / 10 : ITERATIONS;
+    long sink = 0;
+
+    for (int i = 0; i < WARMUP; i++) sink += codec.decode(codec.encode(m)).sequenceNumber;
+
+    long start = System.nanoTime();
+    for (int i = 0; i < iterations; i++) sink += codec.encode(m).length;
+    long encodeNs = (System.nanoTime() - start) / iterations;
+
+    start = System.nanoTime();
+    for (int i = 0; i < iterations; i++) sink += codec.decode(encoded).sequenceNumber;
+    long decodeNs = (System.nanoTime() - start) / iterations;
+
+    blackhole = sink;
+    System.out.printf("%-14s %-7s %10d %14d %14d%n", m.type, name, encoded.length, encodeNs, decodeNs);
+  }
+
+  private static GameMessage msg(GameMessage.Type t, String payload, long seq) {
+    GameMessage m = new GameMessage(t, payload, seq);
+    m.senderIp = "192.168.1.20";
+    m.senderPort = 5123;
+    return m;
+  }
+}
@@ -0,0 +1,95 @@
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import networking.DatagramRing;
+
+public class DatagramRingTests {
+
+  @Test
+  void handsOverDatagramsInReceiveOrder() throws InterruptedException {
+    DatagramRing ring = new DatagramRing(4, 8);
+    ring.offer(new byte[] {1, 2, 3}, 0, 3, null);
+    ring.offer(new byte[] {9, 4, 5}, 1, 2, null);
+
+    DatagramRing.Slot first = ring.take();
+    assertEquals(3, first.length);
+    assertEquals(1, first.data[0]);
+    ring.release(first);
+
+    DatagramRing.Slot second = ring.take();
+    assertEquals(2, second.length);
+    assertEquals(4, second.data[0]);
+    ring.release(second);
+
+    assertEquals(0, ring.getOccupancy());
+  }
+
+  @Test
+  void dropsAndCountsWhenFullUntilSlotsAreReleased() throws InterruptedException {
+    DatagramRing ring = new DatagramRing(2, 8);
+    assertTrue(ring.offer(new byte[1], 0, 1, null));
+    assertTrue(ring.offer(new byte[1], 0, 1, null));
+    assertFalse(ring.offer(new byte[1], 0, 1, null));
+
+    assertEquals(2, ring.getOccupancy());
+    assertEquals(1, ring.getDroppedCount());
+
+    // A taken slot is still in use until released
+    DatagramRing.Slot slot = ring.take();
+    assertFalse(ring.offer(new byte[1], 0, 1, null));
+
+    ring.release(slot);
+    assertTrue(ring.offer(new byte[1], 0, 1, null));
+    assertEquals(2, ring.getDroppedCount());
+  }
+
+  @Test
+  void oversizedDatagramGrowsItsSlot() throws InterruptedException {
+    DatagramRing ring = new DatagramRing(2, 4);
+    byte[] big = new byte[100];
+    big[99] = 7;
+
+    ring.offer(big, 0, big.length, null);
+    DatagramRing.Slot slot = ring.take();
+
+    assertEquals(100, slot.length);
+    assertEquals(7, slot.data[99]);
+  }
+
+  @Test
+  void everyDatagramReachesExactlyOneConsumer() throws InterruptedException {
+    int total = 10_000;
+    DatagramRing ring = new DatagramRing(64, 4);
+    Set<Integer> seen = ConcurrentHashMap.newKeySet();
+    CountDownLatch done = new CountDownLatch(total);
+
+    for (int t = 0; t < 3; t++) {
+      Thread consumer = new Thread(() -> {
+        try {
+          while (true) {
+            DatagramRing.Slot slot = ring.take();
+            int value = ((slot.data[0] & 0xFF) << 8) | (slot.data[1] & 0xFF);
+            ring.release(slot);
+            assertTrue(seen.add(value));
+            done.countDown();
+          }
+        } catch (InterruptedException e) {}
+      });
+      consumer.setDaemon(true);
+      consumer.start();
+    }
+
+    for (int i = 0; i < total; i++) {
+      byte[] d = {(byte) (i >> 8), (byte) i};
+      while (!ring.offer(d, 0, 2, null)) Thread.onSpinWait();
+    }
+
+    assertTrue(done.await(10, TimeUnit.SECONDS));
+    assertEquals(total, seen.size());
+  }
+}
@@ -0,0 +1,102 @@
+import org.junit.jupiter.api.*;
+import java.util.*;
+import static org.junit.jupiter.api.Assertions.*;
+
+import consensus.ElectionManager;
+import consensus.HoldBackQueue;
+import consensus.Sequencer;
+import game.NodeContext;
+import networking.GameMessage;
+
+public class EpochRoutingTests {
+
+  private static final String OLD_DEALER = "127.0.0.1:9001";
+  private static final String NEW_DEALER = "127.0.0.1:9002";
+
+  private NodeContext ctx;
+  private ElectionManager election;
+  private HoldBackQueue queue;
+  private List<Long> delivered;
+
+  @BeforeEach
+  void setup() {
+    ctx = TestDoubles.allocate(NodeContext.class);
+    TestDoubles.DummyTcp tcp = TestDoubles.allocate(TestDoubles.DummyTcp.class).init();
+
+    election = new ElectionManager(ctx, tcp);
+    queue = new HoldBackQueue(Runnable::run);
+    delivered = new ArrayList<>();
+    queue.setQueueAttributes(tcp, null, m -> delivered.add(m.sequenceNumber));
+
+    TestDoubles.setField(ctx, "myId", "127.0.0.1:5000");
+    TestDoubles.setField(ctx, "tcp", tcp);
+    TestDoubles.setField(ctx, "election", election);
+    TestDoubles.setField(ctx, "queue", queue);
+
+    // The old dealer leads epoch 1 from #1
+    ctx.routeMessage(from(OLD_DEALER, GameMessage.Type.COORDINATOR, "1:1", 0, 0));
+  }
+
+  @Test
+  void oldDealersInFlightMessagesAfterTheCoordinatorAreStillDelivered() {
+    ctx.routeMessage(from(OLD_DEALER, GameMessage.Type.GAME_INFO, "a", 1, 1));
+    ctx.routeMessage(from(OLD_DEALER, GameMessage.Type.GAME_INFO, "b", 2, 1));
+
+    // The new dealer announces epoch 2 at #4 before the old dealer's #3 arrives
+    ctx.routeMessage(from(NEW_DEALER, GameMessage.Type.COORDINATOR, "2:4", 0, 0));
+    ctx.routeMessage(from(OLD_DEALER, GameMessage.Type.GAME_INFO, "c", 3, 1));
+    ctx.routeMessage(from(NEW_DEALER, GameMessage.Type.GAME_INFO, "d", 4, 2));
+
+    assertEquals(List.of(1L, 2L, 3L, 4L), delivered);
+  }
+
+  @Test
+  void lastMessageOfThePreviousEpochIsRepairedByTheNewDealer() {
+    ctx.routeMessage(from(OLD_DEALER, GameMessage.Type.GAME_INFO, "a", 1, 1));
+    // #2, the old dealer's last message, is lost
+
+    ctx.routeMessage(from(NEW_DEALER, GameMessage.Type.COORDINATOR, "2:3", 0, 0));
+    ctx.routeMessage(from(NEW_DEALER, GameMessage.Type.GAME_INFO, "c", 3, 2));
+    assertEquals(List.of(1L), delivered);
+
+    // The new dealer resends #2 from the window it inherited, still stamped by the old dealer
+    ctx.routeMessage(from(OLD_DEALER, GameMessage.Type.GAME_INFO, "b", 2, 1));
+    assertEquals(List.of(1L, 2L, 3L), delivered);
+  }
+
+  @Test
+  void standbyRepairsFromTheCrashedDealersReplicatedWindow() {
+    GameMessage first = from(OLD_DEALER, GameMessage.Type.GAME_INFO, "a", 1, 1);
+    GameMessage last = from(OLD_DEALER, GameMessage.Type.GAME_INFO, "b", 2, 1);
+
+    // The standby replicated both messages; this follower only got #1 before the dealer crashed
+    TestDoubles.DummyTcp standbyTcp = TestDoubles.allocate(TestDoubles.DummyTcp.class).init();
+    Sequencer standby = new Sequencer(TestDoubles.allocate(TestDoubles.DummyUdp.class).init(), standbyTcp);
+    standby.replicate(first);
+    standby.replicate(last);
+    standby.startEpoch(2, 2, standby.replicatedWindow(2, 16));
+
+    ctx.routeMessage(first);
+    ctx.routeMessage(from(NEW_DEALER, GameMessage.Type.COORDINATOR, "2:3", 0, 0));
+
+    GameMessage nack = from("127.0.0.1:5000", GameMessage.Type.NACK, "2", 0, 0);
+    assertEquals(Sequencer.NackResult.RESENT, standby.handleNack(nack, nack.getSenderId()));
+    ctx.routeMessage(standbyTcp.sentToPeer.get(0).msg);
+
+    assertEquals(List.of(1L, 2L), delivered);
+  }
+
+  @Test
+  void currentEpochTrafficFromAnyoneButTheLeaderIsIgnored() {
+    ctx.routeMessage(from(NEW_DEALER, GameMessage.Type.GAME_INFO, "x", 1, 1));
+    assertTrue(delivered.isEmpty());
+  }
+
+  private static GameMessage from(String sender, GameMessage.Type type, String payload, long seq, long epoch) {
+    GameMessage m = new GameMessage(type, payload, seq);
+    m.senderIp = sender.substring(0, sender.indexOf(':'));
+    m.senderPort = Integer.parseInt(sender.substring(sender.indexOf(':') + 1));
+    m.epoch = epoch;
+    return m;
+  }
+}
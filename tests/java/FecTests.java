@@ -0,0 +1,101 @@
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+
+import networking.FecDecoder;
+import networking.FecEncoder;
+
+public class FecTests {
+
+  @Test
+  void parityIsEmittedAfterKUnits() {
+    FecEncoder enc = new FecEncoder(3);
+
+    assertNull(enc.add(1, unit(10, 1)));
+    assertNull(enc.add(2, unit(20, 2)));
+    byte[] parity = enc.add(3, unit(5, 3));
+
+    assertNotNull(parity);
+    assertTrue(FecEncoder.isParity(parity, 0, parity.length));
+    assertTrue(enc.isEmpty());
+  }
+
+  @Test
+  void rebuildsTheSingleMissingUnitOfAnyLength() throws Exception {
+    byte[] a = unit(10, 1), b = unit(25, 2), c = unit(7, 3);
+    FecEncoder enc = new FecEncoder(3);
+    enc.add(1, a);
+    enc.add(4, b);
+    byte[] parity = enc.add(9, c);
+
+    FecDecoder dec = new FecDecoder(64);
+    dec.record("leader", 1, a);
+    dec.record("leader", 9, c);
+
+    assertArrayEquals(b, dec.recover("leader", parity, 0, parity.length));
+  }
+
+  @Test
+  void cannotRebuildTwoMissingUnits() throws Exception {
+    FecEncoder enc = new FecEncoder(3);
+    enc.add(1, unit(10, 1));
+    enc.add(2, unit(10, 2));
+    byte[] parity = enc.add(3, unit(10, 3));
+
+    FecDecoder dec = new FecDecoder(64);
+    dec.record("leader", 1, unit(10, 1));
+
+    assertNull(dec.recover("leader", parity, 0, parity.length));
+  }
+
+  @Test
+  void nothingToRebuildWhenGroupIsComplete() throws Exception {
+    byte[] a = unit(10, 1);
+    FecEncoder enc = new FecEncoder(4);
+    enc.add(1, a);
+    byte[] parity = enc.drain();
+
+    FecDecoder dec = new FecDecoder(64);
+    dec.record("leader", 1, a);
+
+    assertNull(dec.recover("leader", parity, 0, parity.length));
+    // A duplicated parity packet must not rebuild a unit that already arrived
+    assertNull(dec.recover("leader", parity, 0, parity.length));
+  }
+
+  @Test
+  void unitsFromAnotherSenderAreNotUsed() throws Exception {
+    byte[] a = unit(10, 1), b = unit(10, 2);
+    FecEncoder enc = new FecEncoder(2);
+    enc.add(1, a);
+    byte[] parity = enc.add(2, b);
+
+    FecDecoder dec = new FecDecoder(64);
+    dec.record("someone-else", 1, a);
+
+    assertNull(dec.recover("leader", parity, 0, parity.length));
+  }
+
+  @Test
+  void decoderConfiguredForFecRemembersUnitsBeforeTheFirstParity() {
+    assertTrue(new FecDecoder(64, true).isActive());
+  }
+
+  @Test
+  void decoderStaysInactiveUntilParityArrives() throws Exception {
+    FecDecoder dec = new FecDecoder(64);
+    assertFalse(dec.isActive());
+
+    FecEncoder enc = new FecEncoder(2);
+    enc.add(1, unit(4, 1));
+    byte[] parity = enc.drain();
+    dec.recover("leader", parity, 0, parity.length);
+
+    assertTrue(dec.isActive());
+  }
+
+  private static byte[] unit(int n, int seed) {
+    byte[] b = new byte[n];
+    for (int i = 0; i < n; i++) b[i] = (byte) (seed * 37 + i * 11);
+    return b;
+  }
+}
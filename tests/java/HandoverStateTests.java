@@ -0,0 +1,40 @@
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.IOException;
+import java.util.List;
+
+import consensus.HandoverState;
+import networking.GameMessage;
+
+public class HandoverStateTests {
+
+  @Test
+  void roundTripsTableSequencePositionAndWindow() throws Exception {
+    GameMessage state = new GameMessage(GameMessage.Type.GAME_STATE, "c3RhdGU=", 11);
+    state.epoch = 3;
+    GameMessage marker = new GameMessage(GameMessage.Type.HANDOVER, "8", 12);
+    marker.epoch = 3;
+
+    HandoverState decoded = HandoverState.decode(new HandoverState(8, 3, 12, "dGFibGU=", List.of(state, marker)).encode());
+
+    assertEquals(8, decoded.roundNumber);
+    assertEquals(3, decoded.epoch);
+    assertEquals(12, decoded.lastSeq);
+    assertEquals("dGFibGU=", decoded.table);
+    assertEquals(2, decoded.window.size());
+    assertEquals(GameMessage.Type.GAME_STATE, decoded.window.get(0).type);
+    assertEquals("c3RhdGU=", decoded.window.get(0).payload);
+    assertEquals(12, decoded.window.get(1).sequenceNumber);
+    assertEquals(3, decoded.window.get(1).epoch);
+  }
+
+  @Test
+  void emptyWindowAndMalformedPayloads() throws Exception {
+    assertTrue(HandoverState.decode(new HandoverState(1, 0, 0, "t", List.of()).encode()).window.isEmpty());
+
+    assertThrows(IOException.class, () -> HandoverState.decode("1\n0:0"));
+    assertThrows(IOException.class, () -> HandoverState.decode("x\n0:0\nt"));
+    assertThrows(IOException.class, () -> HandoverState.decode("1\n00\nt"));
+  }
+}
@@ -13,7 +13,8 @@ public class HoldBackQueueTests {
 
   @BeforeEach
   void setup() {
-    q = new HoldBackQueue();
+    // Deliver on the calling thread so assertions can follow addMessage directly
+    q = new HoldBackQueue(Runnable::run);
     tcp = TestDoubles.allocate(TestDoubles.DummyTcp.class).init();
     deliveredSeqs = new ArrayList<>();
 
@@ -44,6 +45,83 @@ public class HoldBackQueueTests {
     assertEquals(2L, tcp.nacks.get(0).missingSeq);
   }
 
+  @Test
+  void slowDeliveryDoesNotBlockIntake() throws Exception {
+    java.util.concurrent.CountDownLatch release = new java.util.concurrent.CountDownLatch(1);
+    List<Long> delivered = Collections.synchronizedList(new ArrayList<>());
+    HoldBackQueue async = new HoldBackQueue();
+    async.setQueueAttributes(tcp, null, (m) -> {
+      try { release.await(); } catch (InterruptedException e) { Thread.currentThread().interrupt(); }
+      delivered.add(m.sequenceNumber);
+    });
+
+    long start = System.nanoTime();
+    for (long seq = 1; seq <= 3; seq++) async.addMessage(msg(GameMessage.Type.GAME_INFO, seq, "x"));
+    assertTrue(System.nanoTime() - start < 1_000_000_000L);
+    assertEquals(3, async.getPendingDeliveries());
+
+    release.countDown();
+    for (int i = 0; i < 100 && async.getPendingDeliveries() > 0; i++) Thread.sleep(10);
+    assertEquals(List.of(1L, 2L, 3L), delivered);
+  }
+
+  @Test
+  void messageBeyondTheWindowStillNacksTheGap() throws Exception {
+    int window = networking.NetworkConfig.HOLDBACK_WINDOW;
+    q.addMessage(msg(GameMessage.Type.GAME_INFO, 1L + window, "far"));
+    assertTrue(deliveredSeqs.isEmpty());
+
+    for (int i = 0; i < 100 && tcp.rangeNacks.isEmpty(); i++) Thread.sleep(10);
+    assertEquals(List.of("1-" + window), tcp.rangeNacks);
+  }
+
+  @Test
+  void newEpochContinuesWithoutDroppingBufferedMessages() {
+    q.beginEpoch(1, 1);
+    q.addMessage(epochMsg(1, 1));
+    q.addMessage(epochMsg(1, 3));
+
+    // #2 is still missing when the new leader starts epoch 2 at #4
+    q.addMessage(epochMsg(2, 4));
+    assertEquals(List.of(1L), deliveredSeqs);
+
+    q.beginEpoch(2, 4);
+    assertEquals(List.of(1L), deliveredSeqs);
+
+    // The repair of the old epoch's gap is still accepted and releases everything behind it
+    q.addMessage(epochMsg(1, 2));
+    assertEquals(List.of(1L, 2L, 3L, 4L), deliveredSeqs);
+    assertEquals(5, q.getNextExpected());
+  }
+
+  @Test
+  void oldEpochMessagesBeyondTheNewStartAndStaleOnesAreDiscarded() {
+    q.beginEpoch(1, 1);
+    q.addMessage(epochMsg(1, 2));
+    q.beginEpoch(2, 1);
+
+    q.addMessage(epochMsg(1, 1));
+    q.addMessage(epochMsg(2, 1));
+    assertEquals(List.of(1L), deliveredSeqs);
+    assertEquals(2, q.getNextExpected());
+  }
+
+  @Test
+  void syncAdoptsTheLeadersEpoch() {
+    q.addMessage(epochMsg(4, 11));
+    assertTrue(deliveredSeqs.isEmpty());
+
+    q.forceSync(4, 10);
+    assertEquals(List.of(11L), deliveredSeqs);
+    assertEquals(4, q.getEpoch());
+  }
+
+  private GameMessage epochMsg(long epoch, long seq) {
+    GameMessage m = msg(GameMessage.Type.GAME_INFO, seq, "e" + epoch);
+    m.epoch = epoch;
+    return m;
+  }
+
   private GameMessage msg(GameMessage.Type t, long seq, String payload) {
     GameMessage m = new GameMessage(t, payload, seq);
     m.senderIp = "127.0.0.1";
@@ -0,0 +1,64 @@
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import game.Player;
+import game.PokerTable;
+import game.StandbyReplica;
+import networking.Peer;
+
+public class LeaderScheduleTests {
+
+  private static final List<String> MEMBERS = List.of("10.0.0.1:5001", "10.0.0.2:5002", "10.0.0.3:5003", "10.0.0.4:5004");
+
+  @Test
+  void everyNodeComputesTheSameDealerRegardlessOfOrder() {
+    String a = Peer.getScheduledLeader(MEMBERS, "10.0.0.1:5001", 6);
+    String b = Peer.getScheduledLeader(List.of(MEMBERS.get(3), MEMBERS.get(1), MEMBERS.get(0), MEMBERS.get(2)), "10.0.0.1:5001", 6);
+
+    assertEquals(a, b);
+  }
+
+  @Test
+  void agreesWithTheElectionHashWhenTheWinnerIsNotTheOutgoingDealer() {
+    for (int r = 0; r < 8; r++) {
+      int round = r;
+      String outgoing = "10.0.0.9:5009";
+      String scheduled = Peer.getScheduledLeader(MEMBERS, outgoing, round);
+
+      String self = MEMBERS.get(0);
+      Set<String> others = new HashSet<>(MEMBERS);
+      others.remove(self);
+      String bully = MEMBERS.stream()
+          .max((x, y) -> Long.compare(Peer.getPeerHash(x, self, others, round), Peer.getPeerHash(y, self, others, round)))
+          .orElseThrow();
+
+      assertEquals(bully, scheduled, "round " + round);
+    }
+  }
+
+  @Test
+  void skipsTheOutgoingDealer() {
+    // Round 1 lands on the second member in sorted order
+    assertEquals("10.0.0.3:5003", Peer.getScheduledLeader(MEMBERS, "10.0.0.2:5002", 1));
+    assertEquals("10.0.0.1:5001", Peer.getScheduledLeader(List.of("10.0.0.1:5001"), "10.0.0.1:5001", 3));
+  }
+
+  @Test
+  void standbyIsTheDealerOfTheNextRound() {
+    PokerTable table = new PokerTable();
+    for (String id : MEMBERS.subList(1, 4)) table.players.add(new Player(id, 1000));
+    table.roundNumber = 4;
+    String dealer = MEMBERS.get(0);
+
+    String standby = StandbyReplica.standbyFor(table, dealer);
+    assertEquals(Peer.getScheduledLeader(MEMBERS, dealer, 5), standby);
+    assertNotEquals(dealer, standby);
+
+    // A dealer alone at the table has nobody to stand by for it
+    assertNull(StandbyReplica.standbyFor(new PokerTable(), dealer));
+  }
+}
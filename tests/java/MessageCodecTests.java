@@ -0,0 +1,80 @@
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.IOException;
+
+import networking.BinaryMessageCodec;
+import networking.GameMessage;
+import networking.JavaSerializationCodec;
+import networking.MessageCodec;
+
+public class MessageCodecTests {
+
+  @Test
+  void binaryRoundTripPreservesAllFields() throws IOException {
+    GameMessage m = msg(GameMessage.Type.GAME_STATE, "table-state", 42, "192.168.1.20", 5123);
+
+    GameMessage decoded = roundTrip(new BinaryMessageCodec(), m);
+
+    assertEquals(GameMessage.Type.GAME_STATE, decoded.type);
+    assertEquals("table-state", decoded.payload);
+    assertEquals(42, decoded.sequenceNumber);
+    assertEquals("192.168.1.20:5123", decoded.getSenderId());
+  }
+
+  @Test
+  void binaryHandlesUnsequencedNullPayloadAndNonIpv4Sender() throws IOException {
+    GameMessage m = msg(GameMessage.Type.HEARTBEAT, null, -1, "unknown", 65535);
+
+    GameMessage decoded = roundTrip(new BinaryMessageCodec(), m);
+
+    assertNull(decoded.payload);
+    assertEquals(-1, decoded.sequenceNumber);
+    assertEquals("unknown:65535", decoded.getSenderId());
+  }
+
+  @Test
+  void binaryIsSmallerThanJavaSerialization() {
+    GameMessage m = msg(GameMessage.Type.PLAYER_ACTION, "raise 50", 1000, "10.0.0.7", 5555);
+
+    int binary = new BinaryMessageCodec().encode(m).length;
+    int java = new JavaSerializationCodec().encode(m).length;
+
+    assertTrue(binary * 4 < java, "binary=" + binary + " java=" + java);
+  }
+
+  @Test
+  void binaryCarriesTheEpochOnlyWhenTagged() throws IOException {
+    GameMessage tagged = msg(GameMessage.Type.PLAYER_ACTION, "call", 77, "10.0.0.7", 5555);
+    tagged.epoch = 3;
+    GameMessage untagged = msg(GameMessage.Type.PLAYER_ACTION, "call", 77, "10.0.0.7", 5555);
+
+    assertEquals(3, roundTrip(new BinaryMessageCodec(), tagged).epoch);
+    assertEquals(0, roundTrip(new BinaryMessageCodec(), untagged).epoch);
+    assertEquals(new BinaryMessageCodec().encode(untagged).length + 1, new BinaryMessageCodec().encode(tagged).length);
+  }
+
+  @Test
+  void binaryRejectsTruncatedInput() {
+    byte[] data = new BinaryMessageCodec().encode(msg(GameMessage.Type.GAME_INFO, "hello", 3, "10.0.0.1", 5000));
+
+    assertThrows(IOException.class, () -> new BinaryMessageCodec().decode(data, 0, data.length - 2));
+  }
+
+  @Test
+  void forNameSelectsCodec() {
+    assertTrue(MessageCodec.forName("java") instanceof JavaSerializationCodec);
+    assertTrue(MessageCodec.forName("binary") instanceof BinaryMessageCodec);
+  }
+
+  private GameMessage roundTrip(MessageCodec codec, GameMessage m) throws IOException {
+    return codec.decode(codec.encode(m));
+  }
+
+  private GameMessage msg(GameMessage.Type t, String payload, long seq, String ip, int port) {
+    GameMessage m = new GameMessage(t, payload, seq);
+    m.senderIp = ip;
+    m.senderPort = port;
+    return m;
+  }
+}
@@ -0,0 +1,82 @@
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.IOException;
+import java.util.List;
+
+import networking.BinaryMessageCodec;
+import networking.GameMessage;
+import networking.MulticastBatcher;
+
+public class MulticastBatcherTests {
+  private final BinaryMessageCodec codec = new BinaryMessageCodec();
+
+  @Test
+  void loneMessageIsSentUnwrapped() {
+    MulticastBatcher batcher = new MulticastBatcher(1472);
+    byte[] msg = codec.encode(new GameMessage(GameMessage.Type.GAME_INFO, "hi", 1));
+
+    assertNull(batcher.add(msg));
+    byte[] datagram = batcher.drain();
+
+    assertSame(msg, datagram);
+    assertFalse(MulticastBatcher.isBatch(datagram, 0, datagram.length));
+    assertTrue(batcher.isEmpty());
+    assertNull(batcher.drain());
+  }
+
+  @Test
+  void batchUnpacksToMessagesInOrder() throws IOException {
+    MulticastBatcher batcher = new MulticastBatcher(1472);
+    batcher.add(codec.encode(new GameMessage(GameMessage.Type.GAME_STATE, "state", 7)));
+    batcher.add(codec.encode(new GameMessage(GameMessage.Type.GAME_INFO, "turn", 8)));
+    batcher.add(codec.encode(new GameMessage(GameMessage.Type.PLAYER_ACTION, "call", 9)));
+
+    byte[] datagram = batcher.drain();
+    assertTrue(MulticastBatcher.isBatch(datagram, 0, datagram.length));
+
+    List<byte[]> packed = MulticastBatcher.unpack(datagram, 0, datagram.length);
+    assertEquals(3, packed.size());
+    assertEquals(7, codec.decode(packed.get(0)).sequenceNumber);
+    assertEquals("turn", codec.decode(packed.get(1)).payload);
+    assertEquals(GameMessage.Type.PLAYER_ACTION, codec.decode(packed.get(2)).type);
+  }
+
+  @Test
+  void fullBatchIsReturnedWhenNextMessageDoesNotFit() throws IOException {
+    MulticastBatcher batcher = new MulticastBatcher(100);
+    byte[] a = new byte[40];
+    byte[] b = new byte[40];
+    byte[] c = new byte[40];
+    a[0] = 1; b[0] = 2; c[0] = 3;
+
+    assertNull(batcher.add(a));
+    assertNull(batcher.add(b));
+    byte[] full = batcher.add(c);
+
+    assertNotNull(full);
+    assertTrue(full.length <= 100);
+    List<byte[]> packed = MulticastBatcher.unpack(full, 0, full.length);
+    assertEquals(2, packed.size());
+    assertEquals(2, packed.get(1)[0]);
+    assertSame(c, batcher.drain());
+  }
+
+  @Test
+  void messagesTooLargeToShareADatagramAreRejected() {
+    MulticastBatcher batcher = new MulticastBatcher(100);
+
+    assertTrue(batcher.fits(new byte[95]));
+    assertFalse(batcher.fits(new byte[96]));
+  }
+
+  @Test
+  void truncatedBatchIsRejected() {
+    MulticastBatcher batcher = new MulticastBatcher(1472);
+    batcher.add(new byte[10]);
+    batcher.add(new byte[10]);
+    byte[] datagram = batcher.drain();
+
+    assertThrows(IOException.class, () -> MulticastBatcher.unpack(datagram, 0, datagram.length - 1));
+  }
+}
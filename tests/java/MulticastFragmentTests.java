@@ -0,0 +1,103 @@
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import networking.FragmentAssembler;
+import networking.MulticastFragmenter;
+
+public class MulticastFragmentTests {
+
+  @Test
+  void smallMessagesAreSentUnchanged() {
+    byte[] msg = bytes(100);
+
+    List<byte[]> out = MulticastFragmenter.split(msg, 1, 5, 1472);
+
+    assertEquals(1, out.size());
+    assertSame(msg, out.get(0));
+    assertFalse(MulticastFragmenter.isFragment(msg, 0, msg.length));
+  }
+
+  @Test
+  void fragmentsReassembleInAnyOrderAndIgnoreDuplicates() {
+    byte[] msg = bytes(10_000);
+    List<byte[]> fragments = new ArrayList<>(MulticastFragmenter.split(msg, 7, 42, 1000));
+    assertTrue(fragments.size() > 1);
+    for (byte[] f : fragments) assertTrue(f.length <= 1000);
+
+    Collections.reverse(fragments);
+    FragmentAssembler assembler = new FragmentAssembler(1000, 1 << 20);
+    List<Long> abandoned = new ArrayList<>();
+
+    byte[] result = null;
+    for (int i = 0; i < fragments.size(); i++) {
+      byte[] f = fragments.get(i);
+      assertTrue(MulticastFragmenter.isFragment(f, 0, f.length));
+      result = assembler.accept("node-a", f, 0, f.length, 0, abandoned);
+      if (i < fragments.size() - 1) {
+        assertNull(result);
+        assertNull(assembler.accept("node-a", f, 0, f.length, 0, abandoned));
+      }
+    }
+
+    assertArrayEquals(msg, result);
+    assertEquals(0, assembler.getPendingCount());
+    assertEquals(0, assembler.getBufferedBytes());
+    assertTrue(abandoned.isEmpty());
+  }
+
+  @Test
+  void sameMessageIdFromDifferentSendersIsKeptApart() {
+    byte[] a = bytes(3000);
+    byte[] b = bytes(3000);
+    b[0] = 99;
+    List<byte[]> fa = MulticastFragmenter.split(a, 1, -1, 1000);
+    List<byte[]> fb = MulticastFragmenter.split(b, 1, -1, 1000);
+
+    FragmentAssembler assembler = new FragmentAssembler(1000, 1 << 20);
+    List<Long> abandoned = new ArrayList<>();
+    byte[] ra = null, rb = null;
+    for (int i = 0; i < fa.size(); i++) {
+      ra = assembler.accept("node-a", fa.get(i), 0, fa.get(i).length, 0, abandoned);
+      rb = assembler.accept("node-b", fb.get(i), 0, fb.get(i).length, 0, abandoned);
+    }
+
+    assertArrayEquals(a, ra);
+    assertArrayEquals(b, rb);
+  }
+
+  @Test
+  void incompleteSequencedMessagesExpireAndAreReported() {
+    List<byte[]> fragments = MulticastFragmenter.split(bytes(5000), 3, 17, 1000);
+    FragmentAssembler assembler = new FragmentAssembler(1000, 1 << 20);
+    assembler.accept("node-a", fragments.get(0), 0, fragments.get(0).length, 0, new ArrayList<>());
+
+    assertTrue(assembler.expire(500).isEmpty());
+    assertEquals(List.of(17L), assembler.expire(1000));
+    assertEquals(0, assembler.getPendingCount());
+  }
+
+  @Test
+  void oldestPartialIsEvictedWhenMemoryLimitIsReached() {
+    List<byte[]> first = MulticastFragmenter.split(bytes(6000), 1, 10, 1000);
+    List<byte[]> second = MulticastFragmenter.split(bytes(6000), 2, 11, 1000);
+    FragmentAssembler assembler = new FragmentAssembler(1000, 10_000);
+    List<Long> abandoned = new ArrayList<>();
+
+    assembler.accept("node-a", first.get(0), 0, first.get(0).length, 0, abandoned);
+    assembler.accept("node-a", second.get(0), 0, second.get(0).length, 0, abandoned);
+
+    assertEquals(List.of(10L), abandoned);
+    assertEquals(1, assembler.getPendingCount());
+    assertEquals(6000, assembler.getBufferedBytes());
+  }
+
+  private static byte[] bytes(int n) {
+    byte[] b = new byte[n];
+    for (int i = 0; i < n; i++) b[i] = (byte) (i * 31);
+    return b;
+  }
+}
@@ -0,0 +1,37 @@
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.List;
+
+import consensus.NackRanges;
+
+public class NackRangesTests {
+
+  @Test
+  void roundTripsRangesAndSingles() {
+    List<long[]> ranges = List.of(new long[] {5, 9}, new long[] {12, 12}, new long[] {15, 16});
+
+    String payload = NackRanges.encode(ranges);
+    assertEquals("5-9,12,15-16", payload);
+
+    List<long[]> decoded = NackRanges.decode(payload);
+    assertEquals(3, decoded.size());
+    assertArrayEquals(new long[] {5, 9}, decoded.get(0));
+    assertArrayEquals(new long[] {12, 12}, decoded.get(1));
+    assertArrayEquals(new long[] {15, 16}, decoded.get(2));
+  }
+
+  @Test
+  void plainSequenceNumberIsASingleRange() {
+    List<long[]> decoded = NackRanges.decode("42");
+
+    assertEquals(1, decoded.size());
+    assertArrayEquals(new long[] {42, 42}, decoded.get(0));
+  }
+
+  @Test
+  void malformedPayloadIsRejected() {
+    assertThrows(NumberFormatException.class, () -> NackRanges.decode("9-5"));
+    assertThrows(NumberFormatException.class, () -> NackRanges.decode("abc"));
+  }
+}
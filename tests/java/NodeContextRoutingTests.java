@@ -40,10 +40,11 @@ public class NodeContextRoutingTests {
     public DummySequencer() { super(null, null); } // never called (Unsafe used)
 
     @Override
-    public void handleNack(GameMessage nackMsg, String requestorId) {
+    public NackResult handleNack(GameMessage nackMsg, String requestorId) {
       nackCalls++;
       lastNack = nackMsg;
       lastReqId = requestorId;
+      return NackResult.RESENT;
     }
   }
 
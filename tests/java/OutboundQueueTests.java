@@ -0,0 +1,80 @@
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.nio.ByteBuffer;
+
+import networking.GameMessage;
+import networking.OutboundQueue;
+import networking.OutboundQueue.DropPolicy;
+import networking.OutboundQueue.Lane;
+import networking.OutboundQueue.Result;
+
+public class OutboundQueueTests {
+
+  @Test
+  void controlLaneDrainsBeforeQueuedData() {
+    OutboundQueue q = new OutboundQueue(10, DropPolicy.DISCONNECT);
+    ByteBuffer state = frame(1);
+    ByteBuffer hb = frame(2);
+
+    q.offer(state, Lane.DATA);
+    q.offer(hb, Lane.HEARTBEAT);
+
+    ByteBuffer[] batch = new ByteBuffer[4];
+    assertEquals(2, q.drainTo(batch));
+    assertSame(hb, batch[0]);
+    assertSame(state, batch[1]);
+  }
+
+  @Test
+  void onlyOnePendingHeartbeatIsKept() {
+    OutboundQueue q = new OutboundQueue(10, DropPolicy.DISCONNECT);
+
+    assertEquals(Result.QUEUED, q.offer(frame(1), Lane.HEARTBEAT));
+    assertEquals(Result.DROPPED, q.offer(frame(2), Lane.HEARTBEAT));
+    assertEquals(1, q.size());
+
+    q.drainTo(new ByteBuffer[4]);
+    assertEquals(Result.QUEUED, q.offer(frame(3), Lane.HEARTBEAT));
+  }
+
+  @Test
+  void dropPoliciesApplyWhenDataLaneIsFull() {
+    OutboundQueue oldest = new OutboundQueue(1, DropPolicy.DROP_OLDEST);
+    ByteBuffer newer = frame(2);
+    oldest.offer(frame(1), Lane.DATA);
+    assertEquals(Result.DROPPED, oldest.offer(newer, Lane.DATA));
+    ByteBuffer[] batch = new ByteBuffer[2];
+    assertEquals(1, oldest.drainTo(batch));
+    assertSame(newer, batch[0]);
+
+    OutboundQueue newest = new OutboundQueue(1, DropPolicy.DROP_NEWEST);
+    newest.offer(frame(1), Lane.DATA);
+    assertEquals(Result.DROPPED, newest.offer(frame(2), Lane.DATA));
+    assertEquals(1, newest.getDroppedFrames());
+
+    OutboundQueue disconnect = new OutboundQueue(1, DropPolicy.DISCONNECT);
+    disconnect.offer(frame(1), Lane.DATA);
+    assertEquals(Result.OVERFLOW, disconnect.offer(frame(2), Lane.DATA));
+  }
+
+  @Test
+  void controlTrafficIsNotLimitedByDataCapacity() {
+    OutboundQueue q = new OutboundQueue(1, DropPolicy.DISCONNECT);
+    q.offer(frame(1), Lane.DATA);
+
+    assertEquals(Result.QUEUED, q.offer(frame(2), Lane.CONTROL));
+    assertEquals(2, q.size());
+  }
+
+  @Test
+  void laneOfClassifiesMessageTypes() {
+    assertEquals(Lane.HEARTBEAT, Lane.of(GameMessage.Type.HEARTBEAT));
+    assertEquals(Lane.CONTROL, Lane.of(GameMessage.Type.NACK));
+    assertEquals(Lane.DATA, Lane.of(GameMessage.Type.GAME_STATE));
+  }
+
+  private ByteBuffer frame(int marker) {
+    return ByteBuffer.wrap(new byte[] { (byte) marker });
+  }
+}
@@ -0,0 +1,53 @@
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import networking.Peer;
+import networking.PeerRanking;
+
+public class PeerRankingTests {
+
+  private static final String ME = "10.0.0.2:5002";
+  private static final Set<String> PEERS = Set.of("10.0.0.1:5001", "10.0.0.3:5003", "10.0.0.4:5004");
+
+  @Test
+  void hashesMatchPeerGetPeerHashInEveryRound() {
+    PeerRanking ranking = new PeerRanking();
+    for (int round = 0; round < 8; round++) {
+      PeerRanking.Table ranks = ranking.get(ME, PEERS, 1, round);
+      assertEquals(Peer.getPeerHash(ME, ME, PEERS, round), ranks.getMyHash());
+      for (String peer : PEERS) {
+        assertEquals(Peer.getPeerHash(peer, ME, PEERS, round), ranks.hashOf(peer));
+      }
+      assertEquals(Peer.getPeerHash("10.0.0.9:5009", ME, PEERS, round), ranks.hashOf("10.0.0.9:5009"));
+    }
+  }
+
+  @Test
+  void higherPeersAreThoseThatOutrankThisNode() {
+    PeerRanking ranking = new PeerRanking();
+    // Round 0 favours the lowest ID, on top of the higher keys of the peers after this node
+    assertEquals(PEERS, new HashSet<>(ranking.get(ME, PEERS, 1, 0).getHigherPeers()));
+    // Round 1 favours this node
+    assertEquals(List.of(), ranking.get(ME, PEERS, 1, 1).getHigherPeers());
+  }
+
+  @Test
+  void tableIsReusedUntilMembershipOrRoundChanges() {
+    PeerRanking ranking = new PeerRanking();
+    Set<String> peers = new HashSet<>(PEERS);
+    PeerRanking.Table first = ranking.get(ME, peers, 1, 0);
+
+    assertSame(first, ranking.get(ME, peers, 1, 0));
+    assertNotSame(first, ranking.get(ME, peers, 2, 0));
+    assertNotSame(ranking.get(ME, peers, 2, 0), ranking.get(ME, peers, 2, 1));
+
+    // A peer set that changed without a version bump is still caught by its size
+    PeerRanking.Table before = ranking.get(ME, peers, 2, 1);
+    peers.add("10.0.0.5:5005");
+    assertNotSame(before, ranking.get(ME, peers, 2, 1));
+  }
+}
@@ -0,0 +1,65 @@
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+
+import networking.PhiAccrualDetector;
+
+public class PhiAccrualDetectorTests {
+
+  @Test
+  void reportsNothingUntilEnoughSamples() {
+    PhiAccrualDetector d = new PhiAccrualDetector(1000, 2000);
+    d.heartbeat(0);
+    d.heartbeat(2000);
+
+    assertFalse(d.hasEnoughSamples());
+    assertEquals(0, d.phi(60_000));
+  }
+
+  @Test
+  void phiGrowsWithSilenceAfterRegularHeartbeats() {
+    PhiAccrualDetector d = regular(2000, 20);
+    long last = 2000L * 19;
+
+    double justAfter = d.phi(last + 100);
+    double oneMissed = d.phi(last + 4000);
+    double longGone = d.phi(last + 8000);
+
+    assertTrue(d.hasEnoughSamples());
+    assertTrue(justAfter < 1, "phi right after a heartbeat: " + justAfter);
+    assertTrue(oneMissed < 8, "one lost heartbeat should be tolerated: " + oneMissed);
+    assertTrue(longGone > 8, "phi after long silence: " + longGone);
+  }
+
+  @Test
+  void steadyHeartbeatsAreSuspectedSoonAfterTheNextIsDue() {
+    PhiAccrualDetector d = new PhiAccrualDetector(1000, 0);
+    for (int i = 0; i < 20; i++) d.heartbeat(i * 2000L);
+    long last = 2000L * 19;
+
+    assertTrue(d.phi(last + 2300) < 8, "phi shortly after a heartbeat was due: " + d.phi(last + 2300));
+    assertTrue(d.phi(last + 3000) > 8, "phi after 3s of silence: " + d.phi(last + 3000));
+  }
+
+  @Test
+  void fasterTrafficIsSuspectedSooner() {
+    PhiAccrualDetector slow = regular(2000, 20);
+    PhiAccrualDetector fast = regular(1000, 20);
+
+    assertTrue(fast.phi(1000L * 19 + 4000) > slow.phi(2000L * 19 + 4000));
+  }
+
+  @Test
+  void burstsCloserThanMinIntervalAreNotSampled() {
+    PhiAccrualDetector d = new PhiAccrualDetector(1000, 0);
+    d.heartbeat(0);
+    for (int i = 1; i <= 50; i++) d.heartbeat(i);
+
+    assertFalse(d.hasEnoughSamples());
+  }
+
+  private PhiAccrualDetector regular(long interval, int beats) {
+    PhiAccrualDetector d = new PhiAccrualDetector(interval / 2, 2000);
+    for (int i = 0; i < beats; i++) d.heartbeat(i * interval);
+    return d;
+  }
+}
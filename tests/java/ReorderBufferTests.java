@@ -0,0 +1,91 @@
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.List;
+
+import consensus.ReorderBuffer;
+import consensus.ReorderBuffer.Result;
+import networking.GameMessage;
+
+public class ReorderBufferTests {
+
+  @Test
+  void releasesMessagesOnlyInSequence() {
+    ReorderBuffer b = new ReorderBuffer(8);
+    b.offer(msg(3));
+    b.offer(msg(2));
+
+    assertNull(b.poll());
+    assertEquals(2, b.size());
+
+    b.offer(msg(1));
+    assertEquals(1, b.poll().sequenceNumber);
+    assertEquals(2, b.poll().sequenceNumber);
+    assertEquals(3, b.poll().sequenceNumber);
+    assertNull(b.poll());
+    assertEquals(4, b.getNextExpected());
+  }
+
+  @Test
+  void duplicatesAreRejectedOnArrival() {
+    ReorderBuffer b = new ReorderBuffer(8);
+    assertEquals(Result.BUFFERED, b.offer(msg(5)));
+    assertEquals(Result.DUPLICATE, b.offer(msg(5)));
+
+    b.offer(msg(1));
+    b.poll();
+    assertEquals(Result.DUPLICATE, b.offer(msg(1)));
+    assertEquals(1, b.size());
+  }
+
+  @Test
+  void messagesBeyondTheWindowAreRejected() {
+    ReorderBuffer b = new ReorderBuffer(8);
+
+    assertEquals(Result.BUFFERED, b.offer(msg(8)));
+    assertEquals(Result.BEYOND_WINDOW, b.offer(msg(9)));
+  }
+
+  @Test
+  void slotsAreReusedAsTheWindowSlides() {
+    ReorderBuffer b = new ReorderBuffer(4);
+    for (long seq = 1; seq <= 100; seq++) {
+      assertEquals(Result.BUFFERED, b.offer(msg(seq)));
+      assertEquals(seq, b.poll().sequenceNumber);
+    }
+    assertEquals(0, b.size());
+  }
+
+  @Test
+  void resetMovesTheWindowAndDropsBufferedMessages() {
+    ReorderBuffer b = new ReorderBuffer(8);
+    b.offer(msg(3));
+    b.reset(11);
+
+    assertEquals(0, b.size());
+    assertFalse(b.contains(3));
+    assertEquals(Result.DUPLICATE, b.offer(msg(10)));
+    assertEquals(Result.BUFFERED, b.offer(msg(11)));
+    assertEquals(11, b.poll().sequenceNumber);
+  }
+
+  @Test
+  void missingRangesListEveryGapUpToTheHighestBuffered() {
+    ReorderBuffer b = new ReorderBuffer(64);
+    b.offer(msg(4));
+    b.offer(msg(5));
+    b.offer(msg(9));
+
+    List<long[]> gaps = b.missingRanges(10);
+    assertEquals(2, gaps.size());
+    assertArrayEquals(new long[] {1, 3}, gaps.get(0));
+    assertArrayEquals(new long[] {6, 8}, gaps.get(1));
+
+    assertEquals(1, b.missingRanges(1).size());
+    assertTrue(new ReorderBuffer(8).missingRanges(10).isEmpty());
+  }
+
+  private static GameMessage msg(long seq) {
+    return new GameMessage(GameMessage.Type.GAME_INFO, "m" + seq, seq);
+  }
+}
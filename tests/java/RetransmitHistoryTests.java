@@ -0,0 +1,79 @@
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+
+import consensus.RetransmitHistory;
+import networking.GameMessage;
+
+public class RetransmitHistoryTests {
+
+  @Test
+  void keepsOnlyTheLastCapacityEntries() {
+    RetransmitHistory h = new RetransmitHistory(4, 1 << 20, 60_000);
+    for (long seq = 1; seq <= 10; seq++) h.put(msg(seq, "x"), 0);
+
+    assertNull(h.get(6, 0));
+    assertTrue(h.isEvicted(6));
+    assertEquals(7, h.get(7, 0).sequenceNumber);
+    assertEquals(10, h.get(10, 0).sequenceNumber);
+    assertEquals(4, h.size());
+  }
+
+  @Test
+  void neverSentIsNotReportedAsEvicted() {
+    RetransmitHistory h = new RetransmitHistory(4, 1 << 20, 60_000);
+    h.put(msg(1, "x"), 0);
+
+    assertNull(h.get(999, 0));
+    assertFalse(h.isEvicted(999));
+  }
+
+  @Test
+  void memoryBudgetEvictsOldestFirst() {
+    RetransmitHistory h = new RetransmitHistory(100, 300, 60_000);
+    h.put(msg(1, "a".repeat(100)), 0);
+    h.put(msg(2, "b".repeat(100)), 0);
+    h.put(msg(3, "c".repeat(100)), 0);
+
+    assertTrue(h.isEvicted(1));
+    assertNotNull(h.get(3, 0));
+    assertTrue(h.getRetainedBytes() <= 300);
+  }
+
+  @Test
+  void entriesExpireAfterRetentionWindow() {
+    RetransmitHistory h = new RetransmitHistory(100, 1 << 20, 1000);
+    h.put(msg(1, "x"), 0);
+    h.put(msg(2, "x"), 800);
+
+    assertNull(h.get(1, 1500));
+    assertTrue(h.isEvicted(1));
+    assertNotNull(h.get(2, 1500));
+  }
+
+  @Test
+  void lateOutOfOrderPutIsKept() {
+    RetransmitHistory h = new RetransmitHistory(8, 1 << 20, 60_000);
+    h.put(msg(1, "x"), 0);
+    h.put(msg(3, "x"), 0);
+    h.put(msg(2, "x"), 0);
+
+    assertNotNull(h.get(2, 0));
+    assertNotNull(h.get(3, 0));
+  }
+
+  @Test
+  void clearRestartsNumbering() {
+    RetransmitHistory h = new RetransmitHistory(8, 1 << 20, 60_000);
+    h.put(msg(1, "x"), 0);
+    h.put(msg(2, "x"), 0);
+    h.clear(1);
+
+    assertNull(h.get(2, 0));
+    h.put(msg(1, "y"), 0);
+    assertEquals("y", h.get(1, 0).payload);
+  }
+
+  private static GameMessage msg(long seq, String payload) {
+    return new GameMessage(GameMessage.Type.GAME_INFO, payload, seq);
+  }
+}
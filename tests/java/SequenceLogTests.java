@@ -0,0 +1,133 @@
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import consensus.SequenceLog;
+import networking.GameMessage;
+
+public class SequenceLogTests {
+
+  @TempDir
+  Path dir;
+
+  @Test
+  void readsBackWhatWasAppended() throws Exception {
+    SequenceLog log = new SequenceLog(dir, 4096, 4, 0);
+    for (long seq = 1; seq <= 50; seq++) log.append(msg(seq, "action " + seq));
+
+    GameMessage m = log.read(17);
+    assertEquals(17, m.sequenceNumber);
+    assertEquals(GameMessage.Type.PLAYER_ACTION, m.type);
+    assertEquals("action 17", m.payload);
+    assertNull(log.read(51));
+    assertEquals(50, log.getLastSeq());
+    log.close();
+  }
+
+  @Test
+  void rollsSegmentsAndDeletesTheOldest() throws Exception {
+    SequenceLog log = new SequenceLog(dir, 256, 2, 0);
+    for (long seq = 1; seq <= 100; seq++) log.append(msg(seq, "x".repeat(40)));
+
+    assertEquals(2, log.getSegmentCount());
+    assertNull(log.read(1));
+    assertTrue(log.isEvicted(1));
+    assertFalse(log.isEvicted(100));
+    assertEquals("x".repeat(40), log.read(100).payload);
+    log.close();
+  }
+
+  @Test
+  void compactionDropsSegmentsCoveredByASnapshot() throws Exception {
+    SequenceLog log = new SequenceLog(dir, 256, 100, 0);
+    for (long seq = 1; seq <= 100; seq++) log.append(msg(seq, "x".repeat(40)));
+    int before = log.getSegmentCount();
+
+    assertTrue(log.compact(60) > 0);
+    assertTrue(log.getSegmentCount() < before);
+    assertTrue(log.isEvicted(1));
+    assertNotNull(log.read(61));
+    assertNotNull(log.read(100));
+
+    // The active segment always stays
+    log.compact(1000);
+    assertEquals(1, log.getSegmentCount());
+    assertNotNull(log.read(100));
+    log.close();
+  }
+
+  @Test
+  void recoversRecordsAfterRestart() throws Exception {
+    SequenceLog log = new SequenceLog(dir, 512, 8, 0);
+    for (long seq = 1; seq <= 30; seq++) log.append(msg(seq, "p" + seq));
+    log.close();
+
+    SequenceLog reopened = new SequenceLog(dir, 512, 8, 0);
+    assertEquals(30, reopened.getLastSeq());
+    assertEquals("p12", reopened.read(12).payload);
+
+    reopened.append(msg(31, "p31"));
+    assertEquals("p31", reopened.read(31).payload);
+    reopened.close();
+  }
+
+  @Test
+  void tornRecordEndsRecovery() throws Exception {
+    SequenceLog log = new SequenceLog(dir, 4096, 4, 0);
+    log.append(msg(1, "first"));
+    log.append(msg(2, "second"));
+    log.close();
+
+    // Flip a body byte of the second record so its checksum no longer matches
+    Path segment;
+    try (var files = Files.list(dir)) {
+      segment = files.findFirst().orElseThrow();
+    }
+    try (FileChannel ch = FileChannel.open(segment, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+      ByteBuffer len = ByteBuffer.allocate(4);
+      ch.read(len, 0);
+      long second = 16 + len.flip().getInt();
+      ch.write(ByteBuffer.wrap(new byte[] {0x7F}), second + 20);
+    }
+
+    SequenceLog reopened = new SequenceLog(dir, 4096, 4, 0);
+    assertEquals(1, reopened.getLastSeq());
+    assertEquals("first", reopened.read(1).payload);
+    assertNull(reopened.read(2));
+    reopened.close();
+  }
+
+  @Test
+  void deleteRemovesTheNodesDirectory() throws Exception {
+    Path nodeDir = dir.resolve("127.0.0.1_5000");
+    SequenceLog log = new SequenceLog(nodeDir, 256, 4, 0);
+    for (long seq = 1; seq <= 20; seq++) log.append(msg(seq, "x".repeat(40)));
+
+    log.delete();
+    assertFalse(Files.exists(nodeDir));
+  }
+
+  @Test
+  void deleteKeepsSnapshotsStoredNextToTheLog() throws Exception {
+    Path nodeDir = dir.resolve("127.0.0.1_5000");
+    SequenceLog log = new SequenceLog(nodeDir, 256, 4, 0);
+    log.append(msg(1, "x"));
+    new consensus.SnapshotStore(nodeDir.resolve("snapshots"), 1).offer(1, 1, "table");
+
+    log.delete();
+    assertTrue(Files.exists(nodeDir.resolve("snapshots")));
+    try (var files = Files.list(nodeDir)) {
+      assertEquals(1, files.count());
+    }
+  }
+
+  private static GameMessage msg(long seq, String payload) {
+    return new GameMessage(GameMessage.Type.PLAYER_ACTION, payload, seq);
+  }
+}
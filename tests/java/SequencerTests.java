@@ -1,6 +1,12 @@
 import org.junit.jupiter.api.*;
 import static org.junit.jupiter.api.Assertions.*;
 
+import java.nio.file.Path;
+import java.util.List;
+
+import org.junit.jupiter.api.io.TempDir;
+
+import consensus.HandoverState;
 import consensus.Sequencer;
 import networking.GameMessage;
 
@@ -76,4 +82,236 @@ public class SequencerTests {
 
     assertEquals(1, tcp.sentToPeer.size(), "Should not resend when not in history");
   }
-}
\ No newline at end of file
+
+  @Test
+  void handleNackReportsEvictedMessagesAsTooOld() {
+    int capacity = networking.NetworkConfig.SEQUENCER_HISTORY_CAPACITY;
+    for (int i = 0; i <= capacity; i++) {
+      sequencer.multicastAction(new GameMessage(GameMessage.Type.GAME_INFO, "info " + i));
+    }
+
+    GameMessage nack = new GameMessage(GameMessage.Type.NACK, "1");
+    nack.senderIp = "127.0.0.1";
+    nack.senderPort = 5002;
+
+    assertEquals(Sequencer.NackResult.TOO_OLD, sequencer.handleNack(nack, nack.getSenderId()));
+    assertTrue(tcp.sentToPeer.isEmpty());
+  }
+
+  @Test
+  void rangeNackIsAnsweredWithOneBatchedResend() {
+    for (int i = 0; i < 10; i++) {
+      sequencer.multicastAction(new GameMessage(GameMessage.Type.GAME_INFO, "info " + i));
+    }
+
+    GameMessage nack = new GameMessage(GameMessage.Type.NACK, "2-4,7");
+    nack.senderIp = "127.0.0.1";
+    nack.senderPort = 5002;
+
+    assertEquals(Sequencer.NackResult.RESENT, sequencer.handleNack(nack, nack.getSenderId()));
+    assertEquals(List.of(4), tcp.batches);
+    assertEquals(List.of(2L, 3L, 4L, 7L), tcp.sentToPeer.stream().map(s -> s.msg.sequenceNumber).toList());
+  }
+
+  @Test
+  void nacksAreServedFromTheSequenceLog(@TempDir Path dir) {
+    consensus.SequenceLog log = new consensus.SequenceLog(dir, 4096, 4, 0);
+    Sequencer logged = new Sequencer(udp, tcp, log, null);
+    for (int i = 0; i < 5; i++) {
+      logged.multicastAction(new GameMessage(GameMessage.Type.GAME_INFO, "info " + i));
+    }
+    assertEquals(5, log.getLastSeq());
+
+    GameMessage nack = new GameMessage(GameMessage.Type.NACK, "3");
+    nack.senderIp = "127.0.0.1";
+    nack.senderPort = 5002;
+
+    assertEquals(Sequencer.NackResult.RESENT, logged.handleNack(nack, nack.getSenderId()));
+    assertEquals("info 2", tcp.sentToPeer.get(0).msg.payload);
+    log.close();
+  }
+
+  @Test
+  void messagesTheLogRefusesAreStillRepaired(@TempDir Path dir) throws Exception {
+    consensus.SequenceLog log = new consensus.SequenceLog(dir, 4096, 4, 0);
+    for (long seq = 1; seq <= 5; seq++) log.append(new GameMessage(GameMessage.Type.GAME_INFO, "stale " + seq, seq));
+
+    // The log still holds #1-#5 from an earlier run, so these numbers cannot be appended again
+    Sequencer logged = new Sequencer(udp, tcp, log, null);
+    for (int i = 0; i < 3; i++) {
+      logged.multicastAction(new GameMessage(GameMessage.Type.GAME_INFO, "info " + i));
+    }
+
+    GameMessage nack = new GameMessage(GameMessage.Type.NACK, "2");
+    nack.senderIp = "127.0.0.1";
+    nack.senderPort = 5002;
+
+    assertEquals(Sequencer.NackResult.RESENT, logged.handleNack(nack, nack.getSenderId()));
+    assertEquals("info 1", tcp.sentToPeer.get(0).msg.payload);
+    log.close();
+  }
+
+  @Test
+  void catchUpSendsSnapshotThenLogTailInOneBatch(@TempDir Path dir) {
+    consensus.SequenceLog log = new consensus.SequenceLog(dir.resolve("log"), 4096, 4, 0);
+    consensus.SnapshotStore snapshots = new consensus.SnapshotStore(dir.resolve("snapshots"), 100);
+    Sequencer logged = new Sequencer(udp, tcp, log, snapshots);
+
+    logged.multicastAction(new GameMessage(GameMessage.Type.GAME_INFO, "before"));
+    logged.multicastAction(new GameMessage(GameMessage.Type.GAME_STATE, "table"));
+    logged.multicastAction(new GameMessage(GameMessage.Type.GAME_INFO, "after 1"));
+    logged.multicastAction(new GameMessage(GameMessage.Type.GAME_INFO, "after 2"));
+    assertEquals(2, snapshots.latest().seq);
+
+    assertTrue(logged.sendCatchUp("127.0.0.1:5002"));
+    assertEquals(List.of(4), tcp.batches);
+
+    List<GameMessage> sent = tcp.sentToPeer.stream().map(s -> s.msg).toList();
+    assertEquals(GameMessage.Type.SYNC, sent.get(0).type);
+    assertEquals("0:2", sent.get(0).payload);
+    assertEquals("table", sent.get(1).payload);
+    assertEquals(List.of(3L, 4L), sent.subList(2, 4).stream().map(m -> m.sequenceNumber).toList());
+    log.close();
+  }
+
+  @Test
+  void catchUpStartsFromTheNewestStateNotTheLastSnapshot() {
+    sequencer.multicastAction(new GameMessage(GameMessage.Type.GAME_STATE, "old table"));
+    sequencer.multicastAction(new GameMessage(GameMessage.Type.GAME_INFO, "between"));
+    sequencer.multicastAction(new GameMessage(GameMessage.Type.GAME_STATE, "new table"));
+    sequencer.multicastAction(new GameMessage(GameMessage.Type.GAME_INFO, "after"));
+
+    assertTrue(sequencer.sendCatchUp("127.0.0.1:5002"));
+    List<GameMessage> sent = tcp.sentToPeer.stream().map(s -> s.msg).toList();
+    assertEquals(3, sent.size());
+    assertEquals("0:3", sent.get(0).payload);
+    assertEquals("new table", sent.get(1).payload);
+    assertEquals(4L, sent.get(2).sequenceNumber);
+  }
+
+  @Test
+  void catchUpIsUnavailableBeforeAnyStateIsSequenced() {
+    sequencer.multicastAction(new GameMessage(GameMessage.Type.GAME_INFO, "x"));
+    assertFalse(sequencer.sendCatchUp("127.0.0.1:5002"));
+  }
+
+  @Test
+  void concurrentCallersAreSentInSequenceOrder() throws Exception {
+    int threads = 8, perThread = 500;
+    Thread[] callers = new Thread[threads];
+    for (int t = 0; t < threads; t++) {
+      callers[t] = new Thread(() -> {
+        for (int i = 0; i < perThread; i++) {
+          sequencer.multicastAction(new GameMessage(GameMessage.Type.GAME_INFO, "x"));
+        }
+      });
+      callers[t].start();
+    }
+    for (Thread t : callers) t.join();
+
+    assertEquals(threads * perThread, sequencer.getCurrentSeqId());
+    assertEquals(threads * perThread, udp.multicasts.size());
+    for (int i = 0; i < udp.multicasts.size(); i++) {
+      assertEquals(i + 1, udp.multicasts.get(i).sequenceNumber);
+    }
+  }
+
+  @Test
+  void newEpochContinuesNumberingAndTagsMessages() {
+    sequencer.startEpoch(2, 40);
+    sequencer.multicastAction(new GameMessage(GameMessage.Type.GAME_INFO, "first of epoch 2"));
+
+    GameMessage sent = udp.multicasts.get(0);
+    assertEquals(41, sent.sequenceNumber);
+    assertEquals(2, sent.epoch);
+    assertEquals("2:41", sequencer.getEpochStart());
+    assertEquals("2:41", sequencer.getSyncPoint());
+  }
+
+  @Test
+  void nacksForAnEarlierEpochAreTooOld() {
+    sequencer.startEpoch(2, 40);
+    sequencer.multicastAction(new GameMessage(GameMessage.Type.GAME_INFO, "x"));
+
+    GameMessage nack = new GameMessage(GameMessage.Type.NACK, "39-41");
+    nack.senderIp = "127.0.0.1";
+    nack.senderPort = 5002;
+
+    assertEquals(Sequencer.NackResult.TOO_OLD, sequencer.handleNack(nack, nack.getSenderId()));
+  }
+
+  @Test
+  void retainedPartOfAPartlyTooOldNackIsStillResent() {
+    sequencer.startEpoch(2, 40);
+    sequencer.multicastAction(new GameMessage(GameMessage.Type.GAME_INFO, "41"));
+    sequencer.multicastAction(new GameMessage(GameMessage.Type.GAME_INFO, "42"));
+
+    GameMessage nack = new GameMessage(GameMessage.Type.NACK, "39,41-42");
+    nack.senderIp = "127.0.0.1";
+    nack.senderPort = 5002;
+
+    assertEquals(Sequencer.NackResult.TOO_OLD, sequencer.handleNack(nack, nack.getSenderId()));
+    assertEquals(List.of(41L, 42L), tcp.sentToPeer.stream().map(s -> s.msg.sequenceNumber).toList());
+  }
+
+  @Test
+  void sequencedActionReportsItsOwnNumber() throws Exception {
+    sequencer.startEpoch(3, 10);
+    GameMessage marker = sequencer.multicastSequenced(new GameMessage(GameMessage.Type.HANDOVER, "4"))
+        .get(1, java.util.concurrent.TimeUnit.SECONDS);
+    sequencer.multicastAction(new GameMessage(GameMessage.Type.GAME_INFO, "after the marker"));
+
+    assertEquals(11, marker.sequenceNumber);
+    assertEquals(3, marker.epoch);
+    // Only the awaited marker pushes the batch out early
+    assertEquals(1, udp.flushes);
+    List<GameMessage> window = sequencer.exportWindow(marker.sequenceNumber, 10);
+    assertEquals(List.of(11L), window.stream().map(m -> m.sequenceNumber).toList());
+  }
+
+  @Test
+  void handedOverWindowRepairsThePreviousEpoch() throws Exception {
+    sequencer.startEpoch(1, 0);
+    for (int i = 0; i < 5; i++) sequencer.multicastAction(new GameMessage(GameMessage.Type.GAME_INFO, "m" + i));
+    List<GameMessage> window = sequencer.exportWindow(3);
+    assertEquals(List.of(3L, 4L, 5L), window.stream().map(m -> m.sequenceNumber).toList());
+
+    HandoverState handover = HandoverState.decode(
+        new HandoverState(7, sequencer.getEpoch(), sequencer.getCurrentSeqId(), "table", window).encode());
+    Sequencer successor = new Sequencer(udp, tcp);
+    successor.startEpoch(handover.epoch + 1, handover.lastSeq, handover.window);
+    assertEquals("2:6", successor.getEpochStart());
+
+    successor.multicastAction(new GameMessage(GameMessage.Type.GAME_INFO, "first of epoch 2"));
+    GameMessage nack = new GameMessage(GameMessage.Type.NACK, "4-6");
+    nack.senderIp = "127.0.0.1";
+    nack.senderPort = 5002;
+
+    assertEquals(Sequencer.NackResult.RESENT, successor.handleNack(nack, nack.getSenderId()));
+    assertEquals(List.of(4L, 5L, 6L), tcp.sentToPeer.stream().map(s -> s.msg.sequenceNumber).toList());
+    assertEquals("m3", tcp.sentToPeer.get(0).msg.payload);
+
+    GameMessage older = new GameMessage(GameMessage.Type.NACK, "2");
+    older.senderIp = "127.0.0.1";
+    older.senderPort = 5002;
+    assertEquals(Sequencer.NackResult.TOO_OLD, successor.handleNack(older, older.getSenderId()));
+  }
+
+  @Test
+  void standbyRepairsWhatItReplicatedAfterTakingOver() {
+    sequencer.startEpoch(1, 0);
+    for (int i = 0; i < 4; i++) sequencer.multicastAction(new GameMessage(GameMessage.Type.GAME_INFO, "m" + i));
+
+    // The standby only sees the leader's stream as a follower
+    Sequencer standby = new Sequencer(TestDoubles.allocate(TestDoubles.DummyUdp.class).init(), tcp);
+    for (GameMessage delivered : udp.multicasts) standby.replicate(delivered);
+
+    standby.startEpoch(2, 4, standby.replicatedWindow(4, 256));
+    GameMessage nack = new GameMessage(GameMessage.Type.NACK, "2-4");
+    nack.senderIp = "127.0.0.1";
+    nack.senderPort = 5002;
+
+    assertEquals(Sequencer.NackResult.RESENT, standby.handleNack(nack, nack.getSenderId()));
+    assertEquals(List.of(2L, 3L, 4L), tcp.sentToPeer.stream().map(s -> s.msg.sequenceNumber).toList());
+  }
+}
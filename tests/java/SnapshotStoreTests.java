@@ -0,0 +1,89 @@
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.stream.Stream;
+
+import consensus.SnapshotStore;
+
+public class SnapshotStoreTests {
+
+  @TempDir
+  Path dir;
+
+  @Test
+  void offerHonoursTheInterval() {
+    SnapshotStore store = new SnapshotStore(dir, 10);
+
+    assertTrue(store.offer(1, 3, "a"));
+    assertFalse(store.offer(1, 12, "b"));
+    assertTrue(store.offer(1, 13, "c"));
+    assertEquals(13, store.latest().seq);
+    assertEquals("c", store.latest().state);
+  }
+
+  @Test
+  void restartedNumberingIsSnapshottedImmediately() {
+    SnapshotStore store = new SnapshotStore(dir, 10);
+    store.offer(1, 500, "old leader");
+
+    assertTrue(store.offer(2, 1, "new leader"));
+    assertEquals("new leader", new SnapshotStore(dir, 10).latest().state);
+  }
+
+  @Test
+  void latestSurvivesReopenAndOldFilesArePruned() throws Exception {
+    SnapshotStore store = new SnapshotStore(dir, 1);
+    for (long seq = 1; seq <= 5; seq++) store.offer(1, seq, "state " + seq);
+
+    SnapshotStore reopened = new SnapshotStore(dir, 1);
+    assertEquals(5, reopened.latest().seq);
+    assertEquals("state 5", reopened.latest().state);
+    assertEquals(2, files().size());
+  }
+
+  @Test
+  void snapshotKeepsItsEpoch() {
+    new SnapshotStore(dir, 1).offer(4, 17, "table");
+
+    SnapshotStore.Snapshot snap = new SnapshotStore(dir, 1).latest();
+    assertEquals(4, snap.epoch);
+    assertEquals(17, snap.seq);
+  }
+
+  @Test
+  void corruptNewestFallsBackToPrevious() throws Exception {
+    SnapshotStore store = new SnapshotStore(dir, 1);
+    store.offer(1, 1, "good");
+    store.offer(1, 2, "will be damaged");
+
+    List<Path> files = files();
+    Path newest = files.get(files.size() - 1);
+    byte[] data = Files.readAllBytes(newest);
+    data[data.length - 6] ^= 0x01;
+    Files.write(newest, data);
+
+    SnapshotStore.Snapshot snap = new SnapshotStore(dir, 1).latest();
+    assertEquals(1, snap.seq);
+    assertEquals("good", snap.state);
+  }
+
+  @Test
+  void clearRemovesEverything() {
+    SnapshotStore store = new SnapshotStore(dir, 1);
+    store.offer(1, 1, "x");
+    store.clear();
+
+    assertNull(store.latest());
+    assertNull(new SnapshotStore(dir, 1).latest());
+  }
+
+  private List<Path> files() throws Exception {
+    try (Stream<Path> s = Files.list(dir)) {
+      return s.filter(p -> p.toString().endsWith(".snap")).sorted().toList();
+    }
+  }
+}
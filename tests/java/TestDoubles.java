@@ -29,6 +29,7 @@ public final class TestDoubles {
   // ---------- Dummy UDP ----------
   public static class DummyUdp extends UdpMulticastManager {
     public List<GameMessage> multicasts;
+    public int flushes;
 
     // only to satisfy compiler; never called (Unsafe used)
     public DummyUdp(NodeContext ctx) { super(ctx); }
@@ -42,6 +43,11 @@ public final class TestDoubles {
     public void sendMulticast(GameMessage msg) {
       multicasts.add(msg);
     }
+
+    @Override
+    public void flush() {
+      flushes++;
+    }
   }
 
   // ---------- Dummy TCP ----------
@@ -50,6 +56,8 @@ public final class TestDoubles {
     public List<Sent> sentToPeer;
     public List<GameMessage> multicasts;
     public List<Nack> nacks;
+    public List<String> rangeNacks;
+    public List<Integer> batches;
     public List<String> closed;
 
     public static class Sent {
@@ -72,6 +80,8 @@ public final class TestDoubles {
       this.sentToPeer = new CopyOnWriteArrayList<>();
       this.multicasts = new CopyOnWriteArrayList<>();
       this.nacks = new CopyOnWriteArrayList<>();
+      this.rangeNacks = new CopyOnWriteArrayList<>();
+      this.batches = new CopyOnWriteArrayList<>();
       this.closed = new CopyOnWriteArrayList<>();
       return this;
     }
@@ -96,6 +106,17 @@ public final class TestDoubles {
       nacks.add(new Nack(leaderId, missingSeq));
     }
 
+    @Override
+    public void sendNack(String leaderId, String missingRanges) {
+      rangeNacks.add(missingRanges);
+    }
+
+    @Override
+    public void sendToPeer(String peerId, List<GameMessage> msgs) {
+      batches.add(msgs.size());
+      for (GameMessage m : msgs) sentToPeer.add(new Sent(peerId, m));
+    }
+
     @Override
     public void closeConnection(String peerId) {
       closed.add(peerId);
@@ -0,0 +1,35 @@
+#!/bin/bash
+
+set -e
+
+echo "=== Resilient-Holdem Benchmarks ==="
+
+if [ ! -d "src" ]; then
+  echo "src/ folder not found — run this from repo root"
+  exit 1
+fi
+
+# -------- clean --------
+rm -rf bin bench-bin
+mkdir -p bin bench-bin
+
+# -------- compile --------
+echo "→ Compiling source code"
+javac -d bin \
+  src/util/*.java \
+  src/networking/*.java \
+  src/consensus/*.java \
+  src/game/*.java \
+  src/Main.java
+
+echo "→ Compiling benchmarks"
+javac -cp bin -d bench-bin tests/bench/*.java
+
+# -------- run --------
+for bench in bench-bin/*Benchmark.class; do
+  name=$(basename "$bench" .class)
+  echo "→ $name"
+  java -cp "bin:bench-bin" "$name"
+done
+
+echo "=== Done ==="